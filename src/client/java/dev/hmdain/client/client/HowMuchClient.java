@@ -1,14 +1,24 @@
 package dev.hmdain.client.client;
 
 import com.mojang.blaze3d.platform.InputConstants;
+import dev.hmdain.client.config.ModConfig;
+import dev.hmdain.client.debug.PerfStats;
+import dev.hmdain.client.logic.ClientState;
+import dev.hmdain.client.logic.StorageIndex;
 import dev.hmdain.client.ui.HowMuchScreen;
 import dev.hmdain.client.ui.HudOverlay;
+import dev.hmdain.client.ui.PerfOverlay;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.keybinding.v1.KeyBindingHelper;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
+import net.fabricmc.fabric.api.client.screen.v1.ScreenEvents;
+import net.fabricmc.fabric.api.event.player.UseBlockCallback;
 import net.minecraft.client.KeyMapping;
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.screens.inventory.AbstractContainerScreen;
+import net.minecraft.world.InteractionResult;
 import org.lwjgl.glfw.GLFW;
 
 public class HowMuchClient implements ClientModInitializer {
@@ -17,6 +27,9 @@ public class HowMuchClient implements ClientModInitializer {
 
     @Override
     public void onInitializeClient() {
+        // Read the config now, so neither the HUD nor anything else waits on the disk later
+        ModConfig.load();
+
         OPEN_GUI_KEYBINDING = KeyBindingHelper.registerKeyBinding(new KeyMapping(
                 "key.how-much-do-i-actually-need.open_gui",
                 InputConstants.Type.KEYSYM,
@@ -28,8 +41,48 @@ public class HowMuchClient implements ClientModInitializer {
             while (OPEN_GUI_KEYBINDING.consumeClick()) {
                 Minecraft.getInstance().setScreen(new HowMuchScreen());
             }
+            ClientState.getInstance().tick(client);
+            PerfStats.tick(ModConfig.get().perfLogIntervalSeconds);
+        });
+
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) ->
+            client.execute(() -> {
+                ClientState.getInstance().loadStorage(client);
+                ClientState.getInstance().loadProjects(client);
+            }));
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) ->
+            client.execute(() -> {
+                ClientState.getInstance().unloadStorage();
+                ClientState.getInstance().unloadProjects();
+                ClientState.getInstance().resetRecipes();
+            }));
+
+        // Container contents are recorded when their screen closes, keyed by the block that was used to open it
+        UseBlockCallback.EVENT.register((player, level, hand, hitResult) -> {
+            // Sneaking with an item in either hand uses the item instead of the block, as in vanilla
+            boolean handsEmpty = player.getMainHandItem().isEmpty() && player.getOffhandItem().isEmpty();
+            if (level.isClientSide() && !(player.isSecondaryUseActive() && !handsEmpty)) {
+                ClientState.getInstance().onBlockUsed(level, hitResult.getBlockPos());
+            }
+            return InteractionResult.PASS;
+        });
+        ScreenEvents.AFTER_INIT.register((client, screen, width, height) -> {
+            // Only storage menus are recorded; the player's own inventory screen never is
+            if (client.player == null || !(screen instanceof AbstractContainerScreen<?> containerScreen)
+                || !StorageIndex.isStorageMenu(containerScreen.getMenu())) {
+                return;
+            }
+            ClientState state = ClientState.getInstance();
+            StorageIndex.ContainerKey container = state.takePendingContainer();
+            if (container != null) {
+                var inventory = client.player.getInventory();
+                ScreenEvents.remove(screen).register(closed -> state.recordContainer(container, containerScreen.getMenu(), inventory));
+            }
         });
         
-        HudRenderCallback.EVENT.register(new HudOverlay());
+        HudOverlay hudOverlay = new HudOverlay();
+        ClientState.getInstance().addResultListener(hudOverlay);
+        HudRenderCallback.EVENT.register(hudOverlay);
+        HudRenderCallback.EVENT.register(new PerfOverlay());
     }
 }
@@ -2,48 +2,171 @@ package dev.hmdain.client.config;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Settings of the mod, stored as JSON in the config directory.
+ * <p>
+ * The file is read once at client init, so {@link #get()} never touches the disk. {@link #save()}
+ * only takes a copy of the settings; the write happens on a background thread after a short delay,
+ * so a burst of changes ends up as one write, and replaces the file atomically. Edits made to the
+ * file while the game runs are picked up by a file watcher and swapped in as a new instance.
+ */
 public class ModConfig {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
     private static final Path CONFIG_PATH = FabricLoader.getInstance().getConfigDir().resolve("how-much-do-i-actually-need.json");
+    private static final Path TEMP_PATH = CONFIG_PATH.resolveSibling("how-much-do-i-actually-need.json.tmp");
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-    private static ModConfig INSTANCE;
+    private static final long SAVE_DELAY_MILLIS = 500;
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HowMuch Config Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile ModConfig INSTANCE = new ModConfig();
+    // Owned by the writer thread
+    private static ScheduledFuture<?> pendingSave;
+    // The file contents as last written or read by us, so the watcher can skip our own writes
+    private static volatile String knownContents;
+    private static boolean watching;
 
     public boolean hudEnabled = true;
     public int maxHudLines = 10;
+    public boolean perfOverlay = false;
+    // Seconds between performance stat dumps to the log, 0 for none
+    public int perfLogIntervalSeconds = 0;
 
+    /**
+     * Returns the current settings. Never blocks; before {@link #load()} this is the defaults.
+     */
     public static ModConfig get() {
-        if (INSTANCE == null) {
-            load();
-        }
         return INSTANCE;
     }
 
+    /**
+     * Reads the config file, creating it with the defaults if it does not exist, and starts watching
+     * it for external edits. Called once at client init.
+     */
     public static void load() {
         if (Files.exists(CONFIG_PATH)) {
             try {
                 String json = Files.readString(CONFIG_PATH);
-                INSTANCE = GSON.fromJson(json, ModConfig.class);
-            } catch (IOException e) {
+                ModConfig loaded = GSON.fromJson(json, ModConfig.class);
+                knownContents = json;
+                INSTANCE = loaded != null ? loaded : new ModConfig();
+            } catch (IOException | JsonParseException e) {
+                LOGGER.warn("Failed to read {}, using the defaults", CONFIG_PATH, e);
                 INSTANCE = new ModConfig();
-                e.printStackTrace();
             }
         } else {
             INSTANCE = new ModConfig();
             save();
         }
+        startWatching();
     }
 
+    /**
+     * Schedules the current settings to be written. Returns immediately; calls within a short time of
+     * each other are coalesced into a single write.
+     */
     public static void save() {
+        String json = GSON.toJson(INSTANCE);
+        WRITER.execute(() -> {
+            if (pendingSave != null) {
+                pendingSave.cancel(false);
+            }
+            pendingSave = WRITER.schedule(() -> write(json), SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private static void write(String json) {
+        if (json.equals(knownContents)) return;
         try {
-            Files.writeString(CONFIG_PATH, GSON.toJson(INSTANCE));
+            Files.createDirectories(CONFIG_PATH.getParent());
+            Files.writeString(TEMP_PATH, json);
+            knownContents = json;
+            try {
+                Files.move(TEMP_PATH, CONFIG_PATH, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(TEMP_PATH, CONFIG_PATH, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            LOGGER.warn("Failed to save {}", CONFIG_PATH, e);
+        }
+    }
+
+    private static synchronized void startWatching() {
+        if (watching) return;
+        WatchService watchService;
+        try {
+            watchService = CONFIG_PATH.getFileSystem().newWatchService();
+            CONFIG_PATH.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Cannot watch {} for changes, edits need a restart", CONFIG_PATH, e);
+            return;
+        }
+        watching = true;
+
+        Thread watcher = new Thread(() -> watch(watchService), "HowMuch Config Watcher");
+        watcher.setDaemon(true);
+        watcher.setPriority(Thread.MIN_PRIORITY);
+        watcher.start();
+    }
+
+    private static void watch(WatchService watchService) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.context() instanceof Path name && name.equals(CONFIG_PATH.getFileName())) {
+                    changed = true;
+                }
+            }
+            if (changed) {
+                reload();
+            }
+            if (!key.reset()) {
+                LOGGER.warn("Stopped watching {}", CONFIG_PATH);
+                return;
+            }
+        }
+    }
+
+    private static void reload() {
+        String json;
+        try {
+            json = Files.readString(CONFIG_PATH);
+        } catch (IOException e) {
+            // Deleted or still being replaced; the next event brings the new contents
+            return;
+        }
+        if (json.equals(knownContents)) return;
+        try {
+            ModConfig loaded = GSON.fromJson(json, ModConfig.class);
+            if (loaded == null) return;
+            knownContents = json;
+            INSTANCE = loaded;
+            LOGGER.info("Reloaded {}", CONFIG_PATH);
+        } catch (JsonParseException e) {
+            // Editors may save in several steps; keep the current settings until the file parses again
+            LOGGER.warn("Ignoring invalid edit of {}: {}", CONFIG_PATH, e.getMessage());
         }
     }
 }
@@ -0,0 +1,76 @@
+package dev.hmdain.client.debug;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two buckets. Recording is a few atomic adds, so it can
+ * sit on the render thread; percentiles are only as precise as the bucket they fall into.
+ * Values are cumulative since the game started.
+ */
+public final class LatencyHistogram {
+
+    private final String name;
+    // Bucket b holds values in [2^(b-1), 2^b); bucket 0 holds zero
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Takes a consistent-enough copy for display. Concurrent recordings may be only partly included.
+     */
+    public Summary summary() {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int b = 0; b < counts.length; b++) {
+            counts[b] = buckets.get(b);
+            total += counts[b];
+        }
+        return new Summary(total, total == 0 ? 0 : sum.sum() / total,
+            percentile(counts, total, 0.50), percentile(counts, total, 0.99), max.get());
+    }
+
+    private static long percentile(long[] counts, long total, double fraction) {
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank && counts[b] > 0) {
+                return b == 0 ? 0 : (1L << b) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param p50 upper bound of the bucket holding the median, in nanoseconds
+     * @param p99 upper bound of the bucket holding the 99th percentile, in nanoseconds
+     */
+    public record Summary(long count, long mean, long p50, long p99, long max) {
+
+        public String format() {
+            return String.format("n=%d mean=%s p50<%s p99<%s max=%s",
+                count, PerfStats.formatNanos(mean), PerfStats.formatNanos(p50), PerfStats.formatNanos(p99), PerfStats.formatNanos(max));
+        }
+    }
+}
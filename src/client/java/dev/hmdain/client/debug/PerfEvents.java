@@ -0,0 +1,73 @@
+package dev.hmdain.client.debug;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder events of the mod, so its work shows up next to GC and frame data in a recording.
+ * The work is timed by {@link PerfStats}; events are committed afterwards and carry the measured time
+ * as a field rather than as the event duration.
+ */
+final class PerfEvents {
+
+    private static final String CATEGORY = "How Much Do I Actually Need";
+
+    private PerfEvents() {
+    }
+
+    @Name("dev.hmdain.Solve")
+    @Label("Solve")
+    @Category(CATEGORY)
+    @Description("Material calculation on the solver thread")
+    @StackTrace(false)
+    static final class SolveEvent extends Event {
+        @Label("Kind")
+        String kind;
+        @Label("Time")
+        @Timespan
+        long time;
+        @Label("Nodes Expanded")
+        long nodes;
+    }
+
+    @Name("dev.hmdain.Search")
+    @Label("Item Search")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class SearchEvent extends Event {
+        @Label("Query")
+        String query;
+        @Label("Time")
+        @Timespan
+        long time;
+        @Label("Matches")
+        int matches;
+    }
+
+    @Name("dev.hmdain.UiRebuild")
+    @Label("UI Rebuild")
+    @Category(CATEGORY)
+    @Description("Update of the calculator screen's target and result lists")
+    @StackTrace(false)
+    static final class UiRebuildEvent extends Event {
+        @Label("Time")
+        @Timespan
+        long time;
+    }
+
+    @Name("dev.hmdain.SlowHudFrame")
+    @Label("Slow HUD Frame")
+    @Category(CATEGORY)
+    @Description("HUD overlay frame that took longer than " + PerfStats.SLOW_HUD_FRAME_MILLIS + " ms")
+    @StackTrace(false)
+    static final class SlowHudFrameEvent extends Event {
+        @Label("Time")
+        @Timespan
+        long time;
+    }
+}
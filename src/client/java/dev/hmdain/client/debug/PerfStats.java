@@ -0,0 +1,150 @@
+package dev.hmdain.client.debug;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime counters and latency histograms of the mod, for telling whether a stutter comes from it.
+ * <p>
+ * Everything is recorded all the time; it only costs a couple of {@link System#nanoTime()} calls and
+ * atomic adds per measurement. The numbers are shown by the debug overlay, committed as Flight
+ * Recorder events (see {@link PerfEvents}) and can be dumped to the log periodically.
+ */
+public final class PerfStats {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
+    static final long SLOW_HUD_FRAME_MILLIS = 1;
+    private static final long SLOW_HUD_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(SLOW_HUD_FRAME_MILLIS);
+
+    public static final LatencyHistogram SOLVE = new LatencyHistogram("solve");
+    public static final LatencyHistogram SEARCH = new LatencyHistogram("search");
+    public static final LatencyHistogram UI_REBUILD = new LatencyHistogram("ui rebuild");
+    public static final LatencyHistogram HUD_FRAME = new LatencyHistogram("hud frame");
+    private static final List<LatencyHistogram> HISTOGRAMS = List.of(SOLVE, SEARCH, UI_REBUILD, HUD_FRAME);
+
+    private static final LongAdder nodesExpanded = new LongAdder();
+    // Written by the solver thread after each solve
+    private static volatile long closureHits;
+    private static volatile long closureMisses;
+    private static long lastDump = System.nanoTime();
+
+    private PerfStats() {
+    }
+
+    /**
+     * Records a finished solve.
+     *
+     * @param kind  what triggered it, e.g. "full" or "stock"
+     * @param start the {@link System#nanoTime()} at which it started
+     * @param nodes the number of graph nodes the solve expanded
+     */
+    public static void solved(String kind, long start, long nodes, long cacheHits, long cacheMisses) {
+        long time = System.nanoTime() - start;
+        SOLVE.record(time);
+        nodesExpanded.add(nodes);
+        closureHits = cacheHits;
+        closureMisses = cacheMisses;
+
+        PerfEvents.SolveEvent event = new PerfEvents.SolveEvent();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.time = time;
+            event.nodes = nodes;
+            event.commit();
+        }
+    }
+
+    public static void searched(String query, long start, int matches) {
+        long time = System.nanoTime() - start;
+        SEARCH.record(time);
+
+        PerfEvents.SearchEvent event = new PerfEvents.SearchEvent();
+        if (event.shouldCommit()) {
+            event.query = query;
+            event.time = time;
+            event.matches = matches;
+            event.commit();
+        }
+    }
+
+    public static void uiRebuilt(long start) {
+        long time = System.nanoTime() - start;
+        UI_REBUILD.record(time);
+
+        PerfEvents.UiRebuildEvent event = new PerfEvents.UiRebuildEvent();
+        if (event.shouldCommit()) {
+            event.time = time;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a HUD frame. Runs every frame, so an event is only created for slow frames.
+     */
+    public static void hudFrame(long start) {
+        long time = System.nanoTime() - start;
+        HUD_FRAME.record(time);
+
+        if (time >= SLOW_HUD_FRAME_NANOS) {
+            PerfEvents.SlowHudFrameEvent event = new PerfEvents.SlowHudFrameEvent();
+            if (event.shouldCommit()) {
+                event.time = time;
+                event.commit();
+            }
+        }
+    }
+
+    public static long nodesExpanded() {
+        return nodesExpanded.sum();
+    }
+
+    /**
+     * Returns the share of closure lookups served from the cache, or -1 before the first lookup.
+     */
+    public static double closureHitRate() {
+        long hits = closureHits;
+        long total = hits + closureMisses;
+        return total == 0 ? -1 : (double) hits / total;
+    }
+
+    /**
+     * Returns one line per metric, for the overlay and the log.
+     */
+    public static List<String> lines() {
+        List<String> lines = new ArrayList<>(HISTOGRAMS.size() + 1);
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            lines.add(histogram.name() + ": " + histogram.summary().format());
+        }
+        double hitRate = closureHitRate();
+        lines.add("nodes expanded: " + nodesExpanded() + ", closure cache: "
+            + (hitRate < 0 ? "unused" : String.format("%.1f%% hits (%d/%d)", hitRate * 100, closureHits, closureHits + closureMisses)));
+        return lines;
+    }
+
+    /**
+     * Logs all metrics if {@code intervalSeconds} passed since the last dump. Call once per tick; an
+     * interval of zero or less turns the dump off.
+     */
+    public static void tick(int intervalSeconds) {
+        if (intervalSeconds <= 0) return;
+        long now = System.nanoTime();
+        if (now - lastDump < TimeUnit.SECONDS.toNanos(intervalSeconds)) return;
+        lastDump = now;
+        LOGGER.info("Performance stats:");
+        for (String line : lines()) {
+            LOGGER.info("  {}", line);
+        }
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000_000L) return String.format("%.2fs", nanos / 1e9);
+        if (nanos >= 1_000_000L) return String.format("%.2fms", nanos / 1e6);
+        if (nanos >= 1_000L) return String.format("%.1fus", nanos / 1e3);
+        return nanos + "ns";
+    }
+}
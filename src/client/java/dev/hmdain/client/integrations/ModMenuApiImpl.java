@@ -29,6 +29,19 @@ public class ModMenuApiImpl implements ModMenuApi {
                     .setSaveConsumer(newValue -> ModConfig.get().maxHudLines = newValue)
                     .build());
 
+            ConfigCategory debug = builder.getOrCreateCategory(Component.literal("Debug"));
+
+            debug.addEntry(entryBuilder.startBooleanToggle(Component.literal("Performance Overlay"), ModConfig.get().perfOverlay)
+                    .setDefaultValue(false)
+                    .setSaveConsumer(newValue -> ModConfig.get().perfOverlay = newValue)
+                    .build());
+
+            debug.addEntry(entryBuilder.startIntField(Component.literal("Log Performance Stats Every (s)"), ModConfig.get().perfLogIntervalSeconds)
+                    .setDefaultValue(0)
+                    .setMin(0)
+                    .setSaveConsumer(newValue -> ModConfig.get().perfLogIntervalSeconds = newValue)
+                    .build());
+
             builder.setSavingRunnable(ModConfig::save);
 
             return builder.build();
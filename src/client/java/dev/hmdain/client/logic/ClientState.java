@@ -1,34 +1,202 @@
 package dev.hmdain.client.logic;
 
+import dev.hmdain.client.debug.PerfStats;
+import dev.hmdain.core.ClosureCache;
+import dev.hmdain.core.RecipeGraph;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import net.minecraft.ChatFormatting;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.screens.recipebook.RecipeCollection;
+import net.minecraft.core.BlockPos;
+import net.minecraft.locale.Language;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.inventory.AbstractContainerMenu;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Holds the target list and the latest results.
+ * <p>
+ * Targets are only touched on the client thread. Solving happens on a single background thread
+ * that owns the resolver and calculator; each finished solve is published as an immutable
+ * {@link ResultSnapshot}, so the HUD and screen never see a half-updated result.
+ * Recipe imports are indexed on a separate thread and swapped in through the solver queue.
+ * The same thread builds the item browser's {@link ItemSearchIndex} and saves the {@link StorageIndex}.
+ * <p>
+ * In the remaining-needs modes, the inventory and the recorded storage containers are sent to the
+ * solver as stock changes, so results only show what is still missing.
+ * <p>
+ * The targets belong to the selected project of the current world. Projects are saved through
+ * {@link ProjectStore} a moment after their last edit, and the solver keeps the results of recently
+ * shown projects so switching between them is instant.
+ */
 public class ClientState {
-    
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
     private static final ClientState INSTANCE = new ClientState();
-    
+
     public static ClientState getInstance() {
         return INSTANCE;
     }
-    
-    private final List<ItemStack> targets = new ArrayList<>();
-    private final Map<Item, Long> results = new HashMap<>();
+
+    private final Map<Item, ItemStack> targets = new LinkedHashMap<>();
+    private final Map<Item, Long> pendingDeltas = new HashMap<>();
+    private int batchDepth;
+    private boolean recalculationPending;
     private boolean hudEnabled = true;
-    
+    private boolean subtractInventory;
+    // Inventory contents as last sent to the solver, one entry per slot
+    private Item[] slotItems = new Item[0];
+    private int[] slotCounts = new int[0];
+    private boolean subtractStorage;
+    private StorageIndex storage = new StorageIndex();
+    private String storageWorld;
+    // Used on the indexer thread only; null until the world's storage is loaded
+    private StorageIndex.Writer storageWriter;
+    // Containers recorded while the world's storage is still being read, applied on top of it once it is
+    private final Map<StorageIndex.ContainerKey, Reference2IntMap<Item>> recordedWhileLoading = new LinkedHashMap<>();
+    private StorageIndex.ContainerKey pendingContainer;
+    private int pendingContainerTicks;
+    private String projectWorld;
+    private String projectName = DEFAULT_PROJECT;
+    private List<String> projectNames = List.of(DEFAULT_PROJECT);
+    private int projectSaveCountdown = -1;
+    private long projectLoad;
+    // A project's targets are being read; projectName and targets still belong to the previous one
+    private boolean loadingProject;
+    // Target edits made while loading, applied to the loaded project
+    private final List<Runnable> queuedEdits = new ArrayList<>();
+
+    // Owned by the solver thread
     private final RecipeResolver recipeResolver = new RecipeResolver();
     private final CostCalculator costCalculator = new CostCalculator(recipeResolver);
+    private final Map<Item, Long> solvedTargets = new HashMap<>();
+    private boolean unpublished;
+    // Results of recently shown projects, so switching back does not need a solve
+    private final Map<String, SolvedProject> solvedProjects = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SolvedProject> eldest) {
+            return size() > SOLVED_PROJECT_CACHE_SIZE;
+        }
+    };
+    private String solvedProject;
+    // Bumped whenever stock is applied; cached results are only valid for the stock they were solved with
+    private long stockRevision;
+    // The published results came from the cache and the calculator has not solved the targets yet
+    private boolean deferred;
+    // The published results did not come from the calculator, so its touched set does not cover them
+    private boolean fullDiffNext;
+
+    private final List<ResultListener> resultListeners = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService solver = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HowMuch Solver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HowMuch Recipe Indexer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final AtomicLong requestedVersion = new AtomicLong();
+    private final AtomicLong recipeGeneration = new AtomicLong();
+    private final AtomicReference<ResultSnapshot> snapshot = new AtomicReference<>(ResultSnapshot.EMPTY);
+    private volatile long fullSolveVersion;
+
+    private static final int REINDEX_DELAY_TICKS = 20;
+    private static final int PROJECT_SAVE_DELAY_TICKS = 40;
+    // Long enough for the server to answer the use with a menu, short enough that a use which opened
+    // nothing is not attributed to a later screen
+    private static final int PENDING_CONTAINER_TICKS = 10;
+    private static final int SOLVED_PROJECT_CACHE_SIZE = 16;
+    public static final String DEFAULT_PROJECT = "Default";
+    private List<RecipeCollection> indexedCollections;
+    private int reindexCountdown = -1;
+
+    private volatile ItemSearchIndex searchIndex;
+    private Language indexedLanguage;
+
+    public Collection<ItemStack> getTargets() {
+        return Collections.unmodifiableCollection(targets.values());
+    }
 
-    public List<ItemStack> getTargets() {
-        return targets;
+    public int getTargetCount(Item item) {
+        ItemStack stack = targets.get(item);
+        return stack == null ? 0 : stack.getCount();
     }
 
-    public Map<Item, Long> getResults() {
-        return results;
+    /**
+     * Returns the latest completed result. Never blocks; an in-flight solve keeps the previous snapshot visible.
+     */
+    public ResultSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public Map<Material, Long> getResults() {
+        return snapshot.get().results();
+    }
+
+    /**
+     * Registers a listener that is told on the client thread which materials changed after each solve,
+     * instead of having to compare the whole result itself.
+     */
+    public void addResultListener(ResultListener listener) {
+        resultListeners.add(listener);
+    }
+
+    public void removeResultListener(ResultListener listener) {
+        resultListeners.remove(listener);
+    }
+
+    /**
+     * Builds the crafting plan for the current results on the solver thread. Plans are only made on
+     * request, since they are larger than the results and rarely looked at.
+     */
+    public CompletableFuture<CraftingPlan> requestPlan() {
+        return CompletableFuture.supplyAsync(() -> {
+            if (deferred) {
+                deferred = false;
+                costCalculator.calculate(solvedTargets, () -> false);
+            }
+            return costCalculator.plan(unpublished ? -1 : snapshot.get().version());
+        }, solver);
+    }
+
+    /**
+     * Returns the search index for the current language. Built in the background; if the item browser
+     * is opened before the first build finishes, the index is built right away instead.
+     */
+    public ItemSearchIndex getSearchIndex() {
+        ItemSearchIndex index = searchIndex;
+        if (index == null) {
+            index = ItemSearchIndex.build();
+            searchIndex = index;
+        }
+        return index;
     }
 
     public boolean isHudEnabled() {
@@ -38,27 +206,687 @@ public class ClientState {
     public void setHudEnabled(boolean hudEnabled) {
         this.hudEnabled = hudEnabled;
     }
-    
-    public void addTarget(Item item) {
-        for (ItemStack stack : targets) {
-            if (stack.getItem() == item) {
-                stack.setCount(stack.getCount() + 1);
-                recalculate();
+
+    /**
+     * Whether results only show what is still missing after the player's inventory is used up.
+     */
+    public boolean isSubtractInventory() {
+        return subtractInventory;
+    }
+
+    /**
+     * Turns the remaining-needs mode on or off. While on, inventory changes are picked up every tick.
+     */
+    public void setSubtractInventory(boolean subtractInventory) {
+        if (this.subtractInventory == subtractInventory) return;
+        this.subtractInventory = subtractInventory;
+        if (!subtractInventory) {
+            // Take back everything the inventory contributed
+            Map<Item, Long> deltas = new HashMap<>();
+            for (int slot = 0; slot < slotItems.length; slot++) {
+                if (slotItems[slot] != null) {
+                    deltas.merge(slotItems[slot], (long) -slotCounts[slot], Long::sum);
+                }
+            }
+            submitStock(deltas);
+        }
+        slotItems = new Item[0];
+        slotCounts = new int[0];
+    }
+
+    /**
+     * Whether the recorded contents of the player's storage containers count as available, like the inventory.
+     */
+    public boolean isSubtractStorage() {
+        return subtractStorage;
+    }
+
+    /**
+     * Whether any stock is subtracted, so the results are what is still missing rather than the full requirement.
+     */
+    public boolean isSubtractingStock() {
+        return subtractInventory || subtractStorage;
+    }
+
+    public void setSubtractStorage(boolean subtractStorage) {
+        if (this.subtractStorage == subtractStorage) return;
+        this.subtractStorage = subtractStorage;
+        Map<Item, Long> deltas = new HashMap<>();
+        long sign = subtractStorage ? 1 : -1;
+        storage.totals().reference2LongEntrySet().forEach(entry -> deltas.put(entry.getKey(), sign * entry.getLongValue()));
+        submitStock(deltas);
+    }
+
+    public StorageIndex getStorage() {
+        return storage;
+    }
+
+    /**
+     * Remembers the container the player is about to open. Called when a block is used; using any
+     * other block forgets it, and so does a use that opens no screen within a few ticks.
+     */
+    public void onBlockUsed(Level level, BlockPos pos) {
+        pendingContainer = StorageIndex.ContainerKey.of(level, pos);
+        pendingContainerTicks = PENDING_CONTAINER_TICKS;
+    }
+
+    /**
+     * Returns the container the next opened screen belongs to, or null, and forgets it.
+     */
+    public StorageIndex.ContainerKey takePendingContainer() {
+        StorageIndex.ContainerKey key = pendingContainer;
+        pendingContainer = null;
+        return key;
+    }
+
+    /**
+     * Records what a container holds as its screen closes. Only that container is handed to the
+     * indexer thread, which saves the world's storage once the queued changes are applied.
+     */
+    public void recordContainer(StorageIndex.ContainerKey key, AbstractContainerMenu menu, Inventory playerInventory) {
+        Reference2IntMap<Item> contents = StorageIndex.capture(menu, playerInventory);
+        if (storageWorld != null && storageWriter == null) {
+            recordedWhileLoading.put(key, contents);
+        }
+        Map<Item, Long> deltas = storage.record(key, contents);
+        if (deltas.isEmpty()) return;
+        if (subtractStorage) {
+            submitStock(deltas);
+        }
+        if (storageWriter != null) {
+            StorageIndex.Writer writer = storageWriter;
+            indexer.execute(() -> {
+                if (writer.record(key, contents)) {
+                    // Queued behind the changes already waiting, so they are all written at once
+                    indexer.execute(writer::flush);
+                }
+            });
+        }
+    }
+
+    /**
+     * Loads the storage of the world that was just joined, in the background. Containers recorded
+     * before it is read are newer than the file and replace what it says about them.
+     */
+    public void loadStorage(Minecraft client) {
+        String world = StorageIndex.worldId(client);
+        storageWorld = world;
+        storageWriter = null;
+        recordedWhileLoading.clear();
+        if (world == null) return;
+        indexer.execute(() -> {
+            StorageIndex loaded = StorageIndex.read(world);
+            StorageIndex.Writer writer = loaded.writer(world);
+            client.execute(() -> {
+                if (!world.equals(storageWorld)) return;
+                storageWriter = writer;
+                if (!recordedWhileLoading.isEmpty()) {
+                    Map<StorageIndex.ContainerKey, Reference2IntMap<Item>> recorded = new LinkedHashMap<>(recordedWhileLoading);
+                    recordedWhileLoading.clear();
+                    recorded.forEach(loaded::record);
+                    indexer.execute(() -> {
+                        recorded.forEach(writer::record);
+                        writer.flush();
+                    });
+                }
+                // The solver has the totals of the containers recorded so far; only the difference is new
+                Map<Item, Long> deltas = new HashMap<>();
+                storage.totals().reference2LongEntrySet().forEach(entry -> deltas.merge(entry.getKey(), -entry.getLongValue(), Long::sum));
+                loaded.totals().reference2LongEntrySet().forEach(entry -> deltas.merge(entry.getKey(), entry.getLongValue(), Long::sum));
+                deltas.values().removeIf(delta -> delta == 0);
+                storage = loaded;
+                if (subtractStorage) {
+                    submitStock(deltas);
+                }
+            });
+        });
+    }
+
+    /**
+     * Forgets the storage of the world that was left. It was saved whenever it changed.
+     */
+    public void unloadStorage() {
+        storageWorld = null;
+        storageWriter = null;
+        recordedWhileLoading.clear();
+        if (subtractStorage) {
+            Map<Item, Long> deltas = new HashMap<>();
+            storage.totals().reference2LongEntrySet().forEach(entry -> deltas.put(entry.getKey(), -entry.getLongValue()));
+            submitStock(deltas);
+        }
+        storage = new StorageIndex();
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    /**
+     * Returns the projects of the current world, sorted by name.
+     */
+    public List<String> getProjectNames() {
+        return projectNames;
+    }
+
+    /**
+     * Saves the current project and switches to another one. Its targets are read in the background; if
+     * it was shown recently and neither its targets, the recipes nor the stock changed since, its
+     * results are reused instead of solving it again. The current project stays selected until then,
+     * and target edits made in the meantime are applied to the new one once it is loaded.
+     */
+    public void selectProject(String name) {
+        if (!loadingProject && name.equals(projectName)) return;
+        saveProject();
+        long load = ++projectLoad;
+        String world = projectWorld;
+        if (world == null) {
+            applyProject(name, Map.of());
+            return;
+        }
+        loadingProject = true;
+        Minecraft client = Minecraft.getInstance();
+        indexer.execute(() -> {
+            ProjectStore.writeSelected(world, name);
+            Map<Item, Integer> loaded = ProjectStore.read(world, name);
+            client.execute(() -> {
+                if (load == projectLoad) applyProject(name, loaded);
+            });
+        });
+    }
+
+    /**
+     * Creates an empty project and switches to it. Selects the existing project if the name is taken.
+     */
+    public void createProject(String name) {
+        String cleaned = ProjectStore.cleanName(name);
+        if (cleaned == null) return;
+        if (!projectNames.contains(cleaned)) {
+            List<String> names = new ArrayList<>(projectNames);
+            names.add(cleaned);
+            names.sort(String.CASE_INSENSITIVE_ORDER);
+            projectNames = List.copyOf(names);
+            saveProject();
+            projectLoad++;
+            applyProject(cleaned, Map.of());
+            writeProject(true);
+            String world = projectWorld;
+            if (world != null) {
+                indexer.execute(() -> ProjectStore.writeSelected(world, cleaned));
+            }
+            return;
+        }
+        selectProject(cleaned);
+    }
+
+    /**
+     * Deletes the current project and switches to the first remaining one. The default project cannot
+     * be deleted, only emptied.
+     */
+    public void deleteProject() {
+        if (projectName.equals(DEFAULT_PROJECT)) {
+            clearTargets();
+            return;
+        }
+        String deleted = projectName;
+        String world = projectWorld;
+        List<String> names = new ArrayList<>(projectNames);
+        names.remove(deleted);
+        projectNames = List.copyOf(names);
+        projectSaveCountdown = -1;
+        if (world != null) {
+            indexer.execute(() -> ProjectStore.delete(world, deleted));
+        }
+        // No edits are pending anymore, so the switch does not write the deleted project again
+        selectProject(names.isEmpty() ? DEFAULT_PROJECT : names.get(0));
+    }
+
+    /**
+     * Lists the projects of the world that was just joined and loads the one selected last, in the background.
+     */
+    public void loadProjects(Minecraft client) {
+        String world = StorageIndex.worldId(client);
+        projectWorld = world;
+        long load = ++projectLoad;
+        solver.execute(solvedProjects::clear);
+        if (world == null) return;
+        loadingProject = true;
+        indexer.execute(() -> {
+            List<String> names = new ArrayList<>(ProjectStore.list(world));
+            String selected = ProjectStore.readSelected(world);
+            if (selected == null || !names.contains(selected)) selected = DEFAULT_PROJECT;
+            if (!names.contains(DEFAULT_PROJECT)) names.add(0, DEFAULT_PROJECT);
+            String name = selected;
+            Map<Item, Integer> loaded = ProjectStore.read(world, name);
+            client.execute(() -> {
+                if (load != projectLoad) return;
+                projectNames = List.copyOf(names);
+                applyProject(name, loaded);
+            });
+        });
+    }
+
+    /**
+     * Saves the current project of the world that was left and empties the targets.
+     */
+    public void unloadProjects() {
+        saveProject();
+        projectWorld = null;
+        projectLoad++;
+        queuedEdits.clear();
+        projectNames = List.of(DEFAULT_PROJECT);
+        applyProject(DEFAULT_PROJECT, Map.of());
+        solver.execute(solvedProjects::clear);
+    }
+
+    /**
+     * Writes the current project in the background if it has unsaved edits.
+     */
+    private void saveProject() {
+        writeProject(false);
+    }
+
+    private void writeProject(boolean force) {
+        boolean dirty = projectSaveCountdown >= 0;
+        projectSaveCountdown = -1;
+        if (projectWorld == null || !(dirty || force)) return;
+        String world = projectWorld;
+        String name = projectName;
+        byte[] data = ProjectStore.serialize(targets.values());
+        indexer.execute(() -> ProjectStore.write(world, name, data));
+    }
+
+    /**
+     * Selects a project, replaces the targets with its contents and hands them to the solver, which may
+     * reuse cached results. Edits queued while it was loading are applied afterwards as one batch.
+     */
+    private void applyProject(String name, Map<Item, Integer> contents) {
+        projectName = name;
+        loadingProject = false;
+        targets.clear();
+        contents.forEach((item, count) -> targets.put(item, new ItemStack(item, count)));
+        pendingDeltas.clear();
+        recalculationPending = false;
+        projectSaveCountdown = -1;
+
+        Map<Item, Long> counts = new HashMap<>();
+        contents.forEach((item, count) -> counts.put(item, (long) count));
+        long version = requestedVersion.incrementAndGet();
+        fullSolveVersion = version;
+        solver.execute(() -> solveProject(version, name, counts));
+
+        if (!queuedEdits.isEmpty()) {
+            List<Runnable> edits = List.copyOf(queuedEdits);
+            queuedEdits.clear();
+            batch(() -> edits.forEach(Runnable::run));
+        }
+    }
+
+    /**
+     * Queues a target edit made while a project is loading, so it applies to that project once its
+     * targets arrive instead of to the previous project's.
+     *
+     * @return true if the edit was queued and must not run now
+     */
+    private boolean queueWhileLoading(Runnable edit) {
+        if (!loadingProject) return false;
+        queuedEdits.add(edit);
+        return true;
+    }
+
+    /**
+     * Reads a schematic in the background and adds its blocks to the targets as one edit. Long lists
+     * are solved from scratch, which lets the solver spread the work over several threads.
+     */
+    public void importSchematic(Path file) {
+        Minecraft client = Minecraft.getInstance();
+        indexer.execute(() -> {
+            Map<Item, Integer> counts;
+            try {
+                counts = SchematicImporter.read(file);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to import {}", file, e);
+                client.execute(() -> notify(client, Component.literal("Could not read " + file.getFileName()).withStyle(ChatFormatting.RED)));
                 return;
             }
+            client.execute(() -> {
+                batch(() -> {
+                    counts.forEach(this::addTarget);
+                    recalculationPending = true;
+                });
+                long blocks = counts.values().stream().mapToLong(Integer::longValue).sum();
+                notify(client, Component.literal("Imported " + blocks + " items (" + counts.size() + " kinds) from " + file.getFileName()));
+            });
+        });
+    }
+
+    private static void notify(Minecraft client, Component message) {
+        if (client.player != null) {
+            client.player.displayClientMessage(message, false);
         }
-        targets.add(new ItemStack(item));
-        recalculate();
     }
-    
-    public void removeTarget(ItemStack stack) {
-        targets.remove(stack);
-        recalculate();
+
+    public void addTarget(Item item) {
+        addTarget(item, 1);
     }
-    
+
+    public void addTarget(Item item, int amount) {
+        if (queueWhileLoading(() -> addTarget(item, amount))) return;
+        setTargetCount(item, getTargetCount(item) + amount);
+    }
+
+    public void removeTarget(Item item) {
+        setTargetCount(item, 0);
+    }
+
+    /**
+     * Sets a target's count directly; a count of 0 or less removes the target.
+     */
+    public void setTargetCount(Item item, int count) {
+        if (queueWhileLoading(() -> setTargetCount(item, count))) return;
+        ItemStack stack = targets.get(item);
+        int previous = stack == null ? 0 : stack.getCount();
+        int next = Math.max(0, count);
+        if (next == previous) return;
+
+        if (next == 0) {
+            targets.remove(item);
+        } else if (stack == null) {
+            targets.put(item, new ItemStack(item, next));
+        } else {
+            stack.setCount(next);
+        }
+
+        pendingDeltas.merge(item, (long) (next - previous), (a, b) -> a + b == 0 ? null : a + b);
+        projectSaveCountdown = PROJECT_SAVE_DELAY_TICKS;
+        commitIfIdle();
+    }
+
+    public void clearTargets() {
+        if (queueWhileLoading(this::clearTargets)) return;
+        if (targets.isEmpty()) return;
+        targets.clear();
+        pendingDeltas.clear();
+        recalculationPending = true;
+        projectSaveCountdown = PROJECT_SAVE_DELAY_TICKS;
+        commitIfIdle();
+    }
+
+    /**
+     * Runs several target edits as one transaction. Results are only updated once,
+     * after the outermost batch finishes.
+     */
+    public void batch(Runnable edits) {
+        if (queueWhileLoading(() -> batch(edits))) return;
+        batchDepth++;
+        try {
+            edits.run();
+        } finally {
+            batchDepth--;
+            commitIfIdle();
+        }
+    }
+
+    /**
+     * Hands the accumulated edits to the solver as a single delta.
+     */
+    private void commitIfIdle() {
+        if (batchDepth > 0) return;
+
+        if (recalculationPending) {
+            recalculate();
+        } else if (!pendingDeltas.isEmpty()) {
+            long version = requestedVersion.incrementAndGet();
+            Map<Item, Long> deltas = Map.copyOf(pendingDeltas);
+            pendingDeltas.clear();
+            solver.execute(() -> solveDeltas(version, deltas));
+        }
+    }
+
+    /**
+     * Schedules a full solve of the current targets. Any older solve that has not finished yet is superseded.
+     */
     public void recalculate() {
-        costCalculator.calculate(targets);
-        results.clear();
-        results.putAll(costCalculator.getResults());
+        submitFull(null);
+    }
+
+    /**
+     * Schedules a full solve. {@code beforeSolve} runs on the solver thread first, even if the solve itself
+     * ends up superseded.
+     */
+    private void submitFull(Runnable beforeSolve) {
+        pendingDeltas.clear();
+        recalculationPending = false;
+
+        Map<Item, Long> counts = new HashMap<>();
+        for (ItemStack stack : targets.values()) {
+            counts.put(stack.getItem(), (long) stack.getCount());
+        }
+        long version = requestedVersion.incrementAndGet();
+        fullSolveVersion = version;
+        solver.execute(() -> {
+            if (beforeSolve != null) beforeSolve.run();
+            solveFull(version, counts);
+        });
+    }
+
+    /**
+     * Called every client tick. Rebuilds the search index when the language changes. Watches the recipe
+     * book, which the game rebuilds whenever recipes are synced on join, after a reload or when recipes
+     * are unlocked, and re-imports once it settles.
+     */
+    public void tick(Minecraft client) {
+        // Every resource reload, including a language switch, installs a new Language instance
+        Language language = Language.getInstance();
+        if (language != indexedLanguage) {
+            indexedLanguage = language;
+            indexer.execute(() -> searchIndex = ItemSearchIndex.build());
+        }
+
+        // Edits are saved once they settle, so dragging a count up does not write every step
+        if (projectSaveCountdown >= 0 && projectSaveCountdown-- == 0) {
+            saveProject();
+        }
+
+        if (pendingContainer != null && pendingContainerTicks-- == 0) {
+            pendingContainer = null;
+        }
+
+        if (client.player == null) return;
+
+        if (subtractInventory) {
+            syncInventory(client.player.getInventory());
+        }
+
+        List<RecipeCollection> collections = client.player.getRecipeBook().getCollections();
+        if (collections != indexedCollections) {
+            indexedCollections = collections;
+            reindexCountdown = REINDEX_DELAY_TICKS;
+        }
+        if (reindexCountdown >= 0 && reindexCountdown-- == 0) {
+            reloadRecipes(client);
+        }
     }
+
+    /**
+     * Diffs the inventory against what the solver last saw and sends the net change per item.
+     * Moving items between slots cancels out and sends nothing.
+     */
+    private void syncInventory(Inventory inventory) {
+        int size = inventory.getContainerSize();
+        if (slotItems.length != size) {
+            slotItems = Arrays.copyOf(slotItems, size);
+            slotCounts = Arrays.copyOf(slotCounts, size);
+        }
+
+        Map<Item, Long> deltas = null;
+        for (int slot = 0; slot < size; slot++) {
+            ItemStack stack = inventory.getItem(slot);
+            Item item = stack.isEmpty() ? null : stack.getItem();
+            int count = stack.isEmpty() ? 0 : stack.getCount();
+            if (item == slotItems[slot] && count == slotCounts[slot]) continue;
+
+            if (deltas == null) deltas = new HashMap<>();
+            if (slotItems[slot] != null) {
+                deltas.merge(slotItems[slot], (long) -slotCounts[slot], Long::sum);
+            }
+            if (item != null) {
+                deltas.merge(item, (long) count, Long::sum);
+            }
+            slotItems[slot] = item;
+            slotCounts[slot] = count;
+        }
+        if (deltas == null) return;
+
+        deltas.values().removeIf(delta -> delta == 0);
+        submitStock(deltas);
+    }
+
+    /**
+     * Hands a change of available items to the solver. Inventory and storage both feed into the same stock.
+     */
+    private void submitStock(Map<Item, Long> deltas) {
+        if (deltas.isEmpty()) return;
+        long version = requestedVersion.incrementAndGet();
+        Map<Item, Long> stock = Map.copyOf(deltas);
+        solver.execute(() -> solveStock(version, stock));
+    }
+
+    /**
+     * Imports the recipes of the current world on the indexer thread and swaps them in when done.
+     * Until then, and if the import fails, solves keep using the previous recipes. A matching on-disk
+     * index from an earlier session is loaded instead of importing again.
+     */
+    public void reloadRecipes(Minecraft client) {
+        RecipeImporter.Source source = RecipeImporter.snapshot(client);
+        String worldKey = RecipeIndexCache.worldKey(client);
+        long generation = recipeGeneration.incrementAndGet();
+        indexer.execute(() -> {
+            if (generation != recipeGeneration.get()) return;
+            String key = RecipeIndexCache.key(worldKey, source);
+            RecipeIndex cached = RecipeIndexCache.load(key);
+            RecipeIndex index = cached != null ? cached : RecipeImporter.build(source, recipeResolver.getFallbackRecipes());
+            if (cached == null) {
+                RecipeIndexCache.save(key, index);
+            }
+            client.execute(() -> {
+                if (generation == recipeGeneration.get()) {
+                    submitFull(() -> recipeResolver.install(index));
+                }
+            });
+        });
+    }
+
+    /**
+     * Goes back to the hardcoded recipes, e.g. after leaving a world.
+     */
+    public void resetRecipes() {
+        recipeGeneration.incrementAndGet();
+        indexedCollections = null;
+        reindexCountdown = -1;
+        submitFull(recipeResolver::resetToFallback);
+    }
+
+    private void solveProject(long version, String name, Map<Item, Long> counts) {
+        if (version < fullSolveVersion) return;
+        // Remember what the previous project solved to, unless that is already what the cache holds
+        if (solvedProject != null && !deferred && costCalculator.isCurrent()) {
+            solvedProjects.put(solvedProject, new SolvedProject(recipeResolver.getGraph(), stockRevision,
+                Map.copyOf(solvedTargets), Map.copyOf(costCalculator.getResults())));
+        }
+        solvedProject = name;
+
+        SolvedProject cached = solvedProjects.get(name);
+        if (cached != null && cached.graph() == recipeResolver.getGraph() && cached.stockRevision() == stockRevision
+            && cached.targets().equals(counts)) {
+            solvedTargets.clear();
+            solvedTargets.putAll(counts);
+            costCalculator.invalidate();
+            deferred = true;
+            publish(version, cached.results(), null);
+            fullDiffNext = true;
+            return;
+        }
+        solveFull(version, counts);
+    }
+
+    private void solveFull(long version, Map<Item, Long> counts) {
+        if (version < fullSolveVersion) return;
+        long start = System.nanoTime();
+        long nodes = costCalculator.getNodesExpanded();
+        deferred = false;
+        solvedTargets.clear();
+        solvedTargets.putAll(counts);
+        if (costCalculator.calculate(solvedTargets, () -> version != fullSolveVersion)) {
+            publish(version);
+        }
+        recordSolve("full", start, nodes);
+    }
+
+    private void solveDeltas(long version, Map<Item, Long> deltas) {
+        // A newer full solve already includes these edits
+        if (version < fullSolveVersion) return;
+        long start = System.nanoTime();
+        long nodes = costCalculator.getNodesExpanded();
+        // Deltas are never applied on top of cached results; the calculator solves the targets in full first
+        deferred = false;
+        deltas.forEach((item, delta) -> solvedTargets.merge(item, delta, (a, b) -> a + b == 0 ? null : a + b));
+        if (costCalculator.applyDeltas(deltas) || costCalculator.calculate(solvedTargets, () -> fullSolveVersion > version)) {
+            publish(version);
+        }
+        recordSolve("delta", start, nodes);
+    }
+
+    private void solveStock(long version, Map<Item, Long> stock) {
+        // Stock is not part of the targets, so it is applied even if a newer full solve is queued
+        long start = System.nanoTime();
+        long nodes = costCalculator.getNodesExpanded();
+        stockRevision++;
+        boolean wasComplete = costCalculator.isComplete();
+        boolean changed = costCalculator.applyStock(stock);
+        // Also recalculate if the stock change left the tag shares unsettled
+        if (deferred || wasComplete && !costCalculator.isComplete()) {
+            deferred = false;
+            changed = costCalculator.calculate(solvedTargets, () -> fullSolveVersion > version);
+        }
+        if (changed || (unpublished && costCalculator.isComplete())) {
+            publish(version);
+        }
+        recordSolve("stock", start, nodes);
+    }
+
+    private void recordSolve(String kind, long start, long nodesBefore) {
+        ClosureCache cache = recipeResolver.getClosureCache();
+        PerfStats.solved(kind, start, costCalculator.getNodesExpanded() - nodesBefore, cache.getHits(), cache.getMisses());
+    }
+
+    private void publish(long version) {
+        publish(version, costCalculator.getResults(), fullDiffNext ? null : costCalculator.getTouched());
+    }
+
+    /**
+     * @param candidates the materials that may differ from the last published results, or null if unknown
+     */
+    private void publish(long version, Map<Material, Long> results, Set<Material> candidates) {
+        // Only the newest request publishes, intermediate states are never shown
+        if (version != requestedVersion.get()) {
+            unpublished = true;
+            return;
+        }
+        unpublished = false;
+        ResultChange change = ResultChange.diff(version, snapshot.get().results(), results, candidates);
+        costCalculator.clearTouched();
+        fullDiffNext = false;
+
+        ResultSnapshot published = new ResultSnapshot(version, Map.copyOf(results));
+        snapshot.set(published);
+        if (!change.isEmpty() && !resultListeners.isEmpty()) {
+            Minecraft.getInstance().execute(() -> {
+                for (ResultListener listener : resultListeners) {
+                    listener.onResultsChanged(published, change);
+                }
+            });
+        }
+    }
+
+    private record SolvedProject(RecipeGraph graph, long stockRevision, Map<Item, Long> targets, Map<Material, Long> results) {}
 }
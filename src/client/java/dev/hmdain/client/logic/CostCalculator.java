@@ -1,70 +1,414 @@
 package dev.hmdain.client.logic;
 
+import dev.hmdain.core.DemandSolver;
+import dev.hmdain.core.RecipeGraph;
+import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.world.item.Item;
-import net.minecraft.world.item.ItemStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 
 /**
  * Calculates the total material costs for crafting target items.
  * Works with RecipeResolver to break down recipes into base materials.
+ * <p>
+ * Demand is summed per graph node across all targets before anything is rounded, and every
+ * intermediate is expanded exactly once in the graph's topological order. The heavy lifting is
+ * done by a {@link DemandSolver}, which keeps its state between calls so that target changes can
+ * be applied as deltas instead of recalculating everything.
+ * <p>
+ * Items in stock (e.g. the player's inventory) are subtracted at every level: a stocked
+ * intermediate is used as is instead of being crafted. Every stocked item is one pool that is only
+ * drawn from once: its own node takes what it needs first, and only the rest is handed to the tag
+ * nodes it belongs to, consumers before their ingredients. Tag stock depends on the demand the sweep
+ * produces, so after each sweep the shares are recomputed and, if they moved, swept again.
+ * <p>
+ * Full calculations of long target lists, e.g. ones taken from a schematic, sweep the graph in
+ * parallel on the common {@link ForkJoinPool}; the results are identical to a sequential sweep.
+ * <p>
+ * Not thread-safe; {@link ClientState} only ever uses it from its solver thread.
  */
 public class CostCalculator {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
+    // Shorter target lists rarely touch enough nodes per level to be worth splitting
+    private static final int PARALLEL_TARGET_THRESHOLD = 128;
+    // Sweeps an incremental change may take to settle the tag shares before it falls back to a full
+    // calculation, which takes as many as it needs (see collectChanges)
+    private static final int MAX_STOCK_ROUNDS = 8;
+    private static final Comparator<Item> BY_REGISTRY_ID = Comparator.comparingInt(BuiltInRegistries.ITEM::getId);
+
     private final RecipeResolver recipeResolver;
-    private final Map<Item, Long> materialCounts = new HashMap<>();
-    private final Map<Item, Integer> recursionDepth = new HashMap<>();
-    private static final int MAX_DEPTH = 10;
+    private final Map<Material, Long> materialCounts = new HashMap<>();
+    // Demand on materials that are not part of the graph, kept so stock can be subtracted from it
+    private final Map<Material, Long> unindexedDemand = new HashMap<>();
+    private final Map<Item, Long> stock = new HashMap<>();
+    // Materials whose count may have changed since the last clearTouched()
+    private final Set<Material> touched = new HashSet<>();
+    // Stock currently handed to each tag node of the solver's graph, by node id
+    private final Map<Integer, Long> tagStock = new HashMap<>();
+    // Stocked items per tag node of the solver's graph, by rank, each sorted by registry id
+    private final TreeMap<Integer, List<Item>> tagMembers = new TreeMap<>();
+    private DemandSolver solver;
+    private boolean complete;
+    private long nodesExpanded;
 
     public CostCalculator(RecipeResolver recipeResolver) {
         this.recipeResolver = recipeResolver;
     }
 
-    public void calculate(List<ItemStack> targets) {
+    /**
+     * Recalculates everything from scratch for the given target counts.
+     *
+     * @return false if {@code cancelled} fired before the solve finished; the results are then
+     *         incomplete until the next full calculation
+     */
+    public boolean calculate(Map<Item, Long> targets, BooleanSupplier cancelled) {
+        touched.addAll(materialCounts.keySet());
         materialCounts.clear();
-        recursionDepth.clear();
-        for (ItemStack target : targets) {
-            processItem(target.getItem(), target.getCount());
+        unindexedDemand.clear();
+        RecipeGraph graph = recipeResolver.getGraph();
+        if (solver == null || solver.getGraph() != graph) {
+            solver = new DemandSolver(graph, recipeResolver.getClosureCache());
+            tagStock.clear();
+            tagMembers.clear();
+            addAllStock();
+        } else {
+            solver.reset();
+        }
+
+        // Graph nodes are marked in one pass; the rest are base materials outside the graph
+        int[] ids = new int[targets.size()];
+        long[] deltas = new long[targets.size()];
+        int indexed = 0;
+        for (Map.Entry<Item, Long> target : targets.entrySet()) {
+            Material material = Material.of(target.getKey());
+            int id = recipeResolver.getId(material);
+            if (id < 0) {
+                addDemand(material, target.getValue());
+            } else {
+                ids[indexed] = id;
+                deltas[indexed++] = target.getValue();
+            }
+        }
+        solver.addDemands(ids, deltas, indexed);
+        int rounds = recipeResolver.getIndex().tagIds().length + 1;
+        complete = collectChanges(cancelled, targets.size() >= PARALLEL_TARGET_THRESHOLD, rounds);
+        if (!complete && !cancelled.getAsBoolean()) {
+            LOGGER.warn("Tag stock did not settle after {} sweeps; results are incomplete", rounds);
         }
+        return complete;
     }
 
-    private void processItem(Item item, long count) {
-        int depth = recursionDepth.getOrDefault(item, 0);
-        if (depth > MAX_DEPTH) {
-            addMaterial(item, count);
-            return;
+    /**
+     * Applies a change of one target's count on top of the last calculation.
+     *
+     * @return false if the recipe graph changed or the last full calculation was cancelled, in which
+     *         case nothing was applied, or if the tag stock did not settle; the caller then has to
+     *         {@link #calculate} again
+     */
+    public boolean applyDelta(Item item, long delta) {
+        return applyDeltas(Map.of(item, delta));
+    }
+
+    /**
+     * Applies changes of several targets' counts in a single sweep, see {@link #applyDelta}.
+     */
+    public boolean applyDeltas(Map<Item, Long> deltas) {
+        if (!isCurrent()) {
+            return false;
         }
 
-        var recipeOptional = recipeResolver.findRecipe(item);
+        for (Map.Entry<Item, Long> entry : deltas.entrySet()) {
+            addDemand(Material.of(entry.getKey()), entry.getValue());
+        }
+        complete = collectChanges(() -> false, false, MAX_STOCK_ROUNDS);
+        return complete;
+    }
+
+    /**
+     * Applies changes of the stocked item counts in a single sweep. Stock is always recorded; if the
+     * results are not current, the next {@link #calculate} takes it into account.
+     *
+     * @return true if the results changed; false if none of the items matters to them or they are
+     *         not current. If the tag stock did not settle, the results are no longer
+     *         {@linkplain #isComplete() complete} and the caller has to {@link #calculate} again
+     */
+    public boolean applyStock(Map<Item, Long> deltas) {
+        boolean current = isCurrent();
+        boolean relevant = false;
+        boolean solving = solver != null && solver.getGraph() == recipeResolver.getGraph();
+        for (Map.Entry<Item, Long> entry : deltas.entrySet()) {
+            Item item = entry.getKey();
+            long delta = entry.getValue();
+            boolean held = stock.containsKey(item);
+            stock.merge(item, delta, (a, b) -> a + b == 0 ? null : a + b);
+            if (solving) {
+                relevant |= addSolverStock(item, delta);
+                if (held != stock.containsKey(item)) {
+                    updateTagMembers(item, !held);
+                }
+            }
+            Material material = Material.of(item);
+            if (unindexedDemand.containsKey(material)) {
+                refreshUnindexed(material);
+                relevant = true;
+            }
+        }
+        if (current && relevant) {
+            complete = collectChanges(() -> false, false, MAX_STOCK_ROUNDS);
+        }
+        return complete && current && relevant;
+    }
 
-        if (recipeOptional.isEmpty()) {
-            // No recipe found - this is a base material
-            addMaterial(item, count);
+    /**
+     * Whether the results reflect the last calculation in full, i.e. it was not cancelled.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the number of graph nodes processed by all calculations so far.
+     */
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * Whether the results are complete and were calculated with the current recipe graph.
+     */
+    public boolean isCurrent() {
+        return complete && solver.getGraph() == recipeResolver.getGraph();
+    }
+
+    /**
+     * Marks the results as out of date, so the next change has to {@link #calculate} from scratch.
+     * Used when the targets were replaced without solving them.
+     */
+    public void invalidate() {
+        complete = false;
+    }
+
+    /**
+     * Adds stock to the item's own node. What the tag nodes it belongs to get is decided after each
+     * sweep, see {@link #shareTagStock()}.
+     *
+     * @return whether the item is part of the graph at all, as a node or as a member of a tag node
+     */
+    private boolean addSolverStock(Item item, long delta) {
+        int id = recipeResolver.getId(Material.of(item));
+        if (id >= 0) {
+            solver.addStock(id, delta);
+        }
+        return id >= 0 || recipeResolver.getIndex().tagsOf(item).length > 0;
+    }
+
+    /**
+     * Hands all recorded stock to a freshly created solver, marking the graph in one pass.
+     */
+    private void addAllStock() {
+        int[] ids = new int[stock.size()];
+        long[] deltas = new long[stock.size()];
+        int indexed = 0;
+        for (Map.Entry<Item, Long> entry : stock.entrySet()) {
+            int id = recipeResolver.getId(Material.of(entry.getKey()));
+            if (id >= 0) {
+                ids[indexed] = id;
+                deltas[indexed++] = entry.getValue();
+            }
+            updateTagMembers(entry.getKey(), true);
+        }
+        solver.addStocks(ids, deltas, indexed);
+    }
+
+    /**
+     * Adds an item that became stocked to, or removes one that ran out from, the members of the tag
+     * nodes it belongs to.
+     */
+    private void updateTagMembers(Item item, boolean stocked) {
+        RecipeGraph graph = solver.getGraph();
+        for (int tagId : recipeResolver.getIndex().tagsOf(item)) {
+            int rank = graph.rankOf(tagId);
+            if (stocked) {
+                List<Item> members = tagMembers.computeIfAbsent(rank, r -> new ArrayList<>());
+                int position = Collections.binarySearch(members, item, BY_REGISTRY_ID);
+                if (position < 0) members.add(-position - 1, item);
+            } else {
+                List<Item> members = tagMembers.get(rank);
+                if (members == null) continue;
+                members.remove(item);
+                if (members.isEmpty()) tagMembers.remove(rank);
+            }
+        }
+    }
+
+    /**
+     * Hands the stock that items' own nodes leave over to the tag nodes they belong to. Tags are served
+     * in topological order, consumers first, and each takes at most its demand, so no item is counted
+     * twice. Queues the changed tag stock on the solver.
+     *
+     * @return whether any tag node's stock changed, i.e. another sweep is needed
+     */
+    private boolean shareTagStock() {
+        if (tagMembers.isEmpty() && tagStock.isEmpty()) return false;
+        RecipeGraph graph = solver.getGraph();
+
+        Map<Item, Long> leftover = new HashMap<>();
+        for (List<Item> members : tagMembers.values()) {
+            for (Item item : members) {
+                leftover.computeIfAbsent(item, this::leftoverOf);
+            }
+        }
+
+        boolean changed = false;
+        for (Map.Entry<Integer, List<Item>> entry : tagMembers.entrySet()) {
+            int tagId = graph.nodeAt(entry.getKey());
+            long needed = solver.demandOf(tagId);
+            long share = 0;
+            for (Item item : entry.getValue()) {
+                if (share >= needed) break;
+                long available = leftover.get(item);
+                long taken = Math.min(available, needed - share);
+                leftover.put(item, available - taken);
+                share += taken;
+            }
+            changed |= setTagStock(tagId, share);
+        }
+        // Tags none of whose members are stocked anymore
+        for (Integer tagId : List.copyOf(tagStock.keySet())) {
+            if (!tagMembers.containsKey(graph.rankOf(tagId))) {
+                changed |= setTagStock(tagId, 0);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns how much of an item's stock its own node, or its demand as a base material outside the
+     * graph, does not use.
+     */
+    private long leftoverOf(Item item) {
+        Material material = Material.of(item);
+        int id = recipeResolver.getId(material);
+        long used = id >= 0 ? solver.demandOf(id) : unindexedDemand.getOrDefault(material, 0L);
+        return Math.max(0, stock.getOrDefault(item, 0L) - Math.max(0, used));
+    }
+
+    private boolean setTagStock(int tagId, long share) {
+        long previous = tagStock.getOrDefault(tagId, 0L);
+        if (share == previous) return false;
+        solver.addStock(tagId, share - previous);
+        if (share == 0) {
+            tagStock.remove(tagId);
+        } else {
+            tagStock.put(tagId, share);
+        }
+        return true;
+    }
+
+    private void addDemand(Material material, long delta) {
+        int id = recipeResolver.getId(material);
+        if (id < 0) {
+            // Not part of any recipe - this is a base material
+            unindexedDemand.merge(material, delta, (a, b) -> a + b == 0 ? null : a + b);
+            refreshUnindexed(material);
             return;
         }
+        solver.addDemand(id, delta);
+    }
 
-        RecipeResolver.RecipeData recipeData = recipeOptional.get();
-        int outputCount = recipeData.resultCount();
-        if (outputCount <= 0) outputCount = 1;
+    /**
+     * Sweeps until the tag shares settle. A tag's demand only depends on the tags consuming it, which
+     * come before it in rank order, and its share only on its demand and the shares of those before
+     * it. So every round settles at least one more tag, and one round per tag plus one final sweep
+     * always suffices.
+     *
+     * @return false if {@code cancelled} fired or the shares did not settle within {@code maxRounds}
+     */
+    private boolean collectChanges(BooleanSupplier cancelled, boolean parallel, int maxRounds) {
+        for (int round = 1; ; round++) {
+            int changed = parallel ? solver.sweep(cancelled, ForkJoinPool.commonPool()) : solver.sweep(cancelled);
+            nodesExpanded += solver.expandedCount();
+            if (changed < 0) {
+                return false;
+            }
+            for (int i = 0; i < changed; i++) {
+                int id = solver.changedBase(i);
+                setMaterial(recipeResolver.getMaterial(id), solver.remainingOf(id));
+            }
+            if (!shareTagStock()) {
+                return true;
+            }
+            if (round == maxRounds) {
+                LOGGER.debug("Tag stock did not settle within {} sweeps, recalculating", maxRounds);
+                return false;
+            }
+        }
+    }
 
-        long craftsNeeded = (long) Math.ceil((double) count / outputCount);
+    private void refreshUnindexed(Material material) {
+        long demand = unindexedDemand.getOrDefault(material, 0L);
+        long held = material.isTag() ? 0 : stock.getOrDefault(material.item(), 0L);
+        setMaterial(material, demand - held);
+    }
 
-        recursionDepth.put(item, depth + 1);
+    private void setMaterial(Material material, long count) {
+        touched.add(material);
+        if (count > 0) {
+            materialCounts.put(material, count);
+        } else {
+            materialCounts.remove(material);
+        }
+    }
 
-        for (RecipeResolver.IngredientData ingredient : recipeData.ingredients()) {
-            processItem(ingredient.item(), craftsNeeded * ingredient.count());
+    /**
+     * Builds the crafting plan for the last calculation, or returns null if it is not current.
+     */
+    public CraftingPlan plan(long version) {
+        if (!isCurrent()) return null;
+        RecipeGraph graph = solver.getGraph();
+        List<CraftingPlan.Step> steps = new ArrayList<>();
+        for (DemandSolver.CraftStep step : solver.craftSteps()) {
+            int id = step.id();
+            List<CraftingPlan.Ingredient> ingredients = new ArrayList<>(graph.ingredientEnd(id) - graph.ingredientStart(id));
+            for (int edge = graph.ingredientStart(id); edge < graph.ingredientEnd(id); edge++) {
+                ingredients.add(new CraftingPlan.Ingredient(recipeResolver.getMaterial(graph.ingredientId(edge)),
+                    step.crafts() * graph.ingredientCount(edge)));
+            }
+            steps.add(new CraftingPlan.Step(recipeResolver.getMaterial(id), step.crafts(), step.produced(), step.surplus(), List.copyOf(ingredients)));
         }
+        return new CraftingPlan(version, List.copyOf(steps));
+    }
 
-        recursionDepth.put(item, depth);
+    /**
+     * Returns the materials whose count may have changed since {@link #clearTouched()}, a superset of
+     * the ones that did. Lets callers compare results without walking all of them.
+     */
+    public Set<Material> getTouched() {
+        return touched;
     }
 
-    private void addMaterial(Item item, long count) {
-        materialCounts.merge(item, count, Long::sum);
+    public void clearTouched() {
+        touched.clear();
     }
 
-    public Map<Item, Long> getResults() {
+    /**
+     * Returns the base materials still needed. Ingredients that accept any member of a tag are reported
+     * as a single tag material rather than being pinned to one item.
+     */
+    public Map<Material, Long> getResults() {
         return materialCounts;
     }
 }
@@ -0,0 +1,18 @@
+package dev.hmdain.client.logic;
+
+import java.util.List;
+
+/**
+ * Step-by-step crafting order for the current targets, ingredients first.
+ * The version is the {@link ResultSnapshot} version the plan belongs to, or -1 if it matches none.
+ */
+public record CraftingPlan(long version, List<Step> steps) {
+
+    /**
+     * Crafting {@code material} {@code crafts} times yields {@code produced} items, {@code surplus} of
+     * which are left over once every step that needs them took its share.
+     */
+    public record Step(Material material, long crafts, long produced, long surplus, List<Ingredient> ingredients) {}
+
+    public record Ingredient(Material material, long count) {}
+}
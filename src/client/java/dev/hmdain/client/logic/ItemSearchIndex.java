@@ -0,0 +1,207 @@
+package dev.hmdain.client.logic;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.Items;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable search index over every registered item, for the item browser.
+ * <p>
+ * Lowercased display names and registry paths are broken into trigrams with sorted posting lists,
+ * so a query only verifies the items that contain all of its trigrams instead of scanning the
+ * registry. Queries shorter than three characters fall back to a scan of the precomputed strings.
+ * <p>
+ * Supported queries:
+ * <ul>
+ *   <li>{@code stone} - display name or registry path contains the text</li>
+ *   <li>{@code @create} - items of every namespace starting with {@code create}; text may follow</li>
+ *   <li>{@code minecraft:oak_} - registry id starts with the text</li>
+ * </ul>
+ * Display names depend on the language, so the index has to be rebuilt when it changes.
+ */
+public final class ItemSearchIndex {
+
+    private final Item[] items;
+    private final String[] names;
+    private final String[] paths;
+    private final String[] ids;
+    private final int[] idOrder;
+    private final String[] namespaces;
+    private final int[][] namespaceMembers;
+    private final Long2ObjectOpenHashMap<int[]> postings;
+
+    private ItemSearchIndex(Item[] items, String[] names, String[] paths, String[] ids, int[] idOrder,
+                            String[] namespaces, int[][] namespaceMembers, Long2ObjectOpenHashMap<int[]> postings) {
+        this.items = items;
+        this.names = names;
+        this.paths = paths;
+        this.ids = ids;
+        this.idOrder = idOrder;
+        this.namespaces = namespaces;
+        this.namespaceMembers = namespaceMembers;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index for the current language. Resolves every item's display name, so it takes a
+     * while with large mod packs; {@link ClientState} runs it off the client thread.
+     */
+    public static ItemSearchIndex build() {
+        List<Item> registered = new ArrayList<>();
+        for (Item item : BuiltInRegistries.ITEM) {
+            if (item != Items.AIR) registered.add(item);
+        }
+
+        int size = registered.size();
+        Item[] items = registered.toArray(new Item[0]);
+        String[] names = new String[size];
+        String[] paths = new String[size];
+        String[] ids = new String[size];
+        Long2ObjectOpenHashMap<IntArrayList> lists = new Long2ObjectOpenHashMap<>();
+        Map<String, IntArrayList> byNamespace = new TreeMap<>();
+
+        for (int i = 0; i < size; i++) {
+            ResourceLocation location = BuiltInRegistries.ITEM.getKey(items[i]);
+            names[i] = items[i].getDefaultInstance().getHoverName().getString().toLowerCase(Locale.ROOT);
+            paths[i] = location.getPath();
+            ids[i] = location.toString();
+            byNamespace.computeIfAbsent(location.getNamespace(), namespace -> new IntArrayList()).add(i);
+            addTrigrams(lists, names[i], i);
+            addTrigrams(lists, paths[i], i);
+        }
+
+        Long2ObjectOpenHashMap<int[]> postings = new Long2ObjectOpenHashMap<>(lists.size());
+        lists.long2ObjectEntrySet().fastForEach(entry -> postings.put(entry.getLongKey(), entry.getValue().toIntArray()));
+
+        Integer[] boxedOrder = new Integer[size];
+        for (int i = 0; i < size; i++) boxedOrder[i] = i;
+        Arrays.sort(boxedOrder, (a, b) -> ids[a].compareTo(ids[b]));
+        int[] idOrder = new int[size];
+        for (int i = 0; i < size; i++) idOrder[i] = boxedOrder[i];
+
+        String[] namespaces = byNamespace.keySet().toArray(new String[0]);
+        int[][] namespaceMembers = new int[namespaces.length][];
+        for (int n = 0; n < namespaces.length; n++) {
+            namespaceMembers[n] = byNamespace.get(namespaces[n]).toIntArray();
+        }
+
+        return new ItemSearchIndex(items, names, paths, ids, idOrder, namespaces, namespaceMembers, postings);
+    }
+
+    private static void addTrigrams(Long2ObjectOpenHashMap<IntArrayList> lists, String text, int item) {
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            IntArrayList list = lists.computeIfAbsent(trigram(text, i), key -> new IntArrayList(4));
+            // Items are added in order, so a repeated trigram can only be a duplicate of the last entry
+            if (list.isEmpty() || list.getInt(list.size() - 1) != item) {
+                list.add(item);
+            }
+        }
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Returns up to {@code limit} matching items in registry order. An empty query matches everything.
+     */
+    public List<Item> search(String query, int limit) {
+        String text = query.toLowerCase(Locale.ROOT).trim();
+        int[] candidates = null; // null means all items
+
+        if (text.startsWith("@")) {
+            int space = text.indexOf(' ');
+            candidates = namespaceMatches(space < 0 ? text.substring(1) : text.substring(1, space));
+            text = space < 0 ? "" : text.substring(space + 1).trim();
+        }
+        if (!text.isEmpty()) {
+            candidates = text.indexOf(':') >= 0 ? intersect(candidates, idPrefixMatches(text)) : textMatches(candidates, text);
+        }
+
+        List<Item> result = new ArrayList<>(Math.min(limit, candidates == null ? items.length : candidates.length));
+        if (candidates == null) {
+            for (int i = 0; i < items.length && result.size() < limit; i++) result.add(items[i]);
+        } else {
+            for (int i = 0; i < candidates.length && result.size() < limit; i++) result.add(items[candidates[i]]);
+        }
+        return result;
+    }
+
+    private int[] namespaceMatches(String prefix) {
+        IntArrayList matches = new IntArrayList();
+        for (int n = 0; n < namespaces.length; n++) {
+            if (namespaces[n].startsWith(prefix)) matches.addElements(matches.size(), namespaceMembers[n]);
+        }
+        int[] sorted = matches.toIntArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private int[] idPrefixMatches(String prefix) {
+        int low = 0;
+        int high = idOrder.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[idOrder[mid]].compareTo(prefix) < 0) low = mid + 1;
+            else high = mid;
+        }
+        IntArrayList matches = new IntArrayList();
+        for (int i = low; i < idOrder.length && ids[idOrder[i]].startsWith(prefix); i++) {
+            matches.add(idOrder[i]);
+        }
+        int[] sorted = matches.toIntArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private int[] textMatches(int[] candidates, String text) {
+        if (text.length() >= 3) {
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                int[] posting = postings.get(trigram(text, i));
+                if (posting == null) return new int[0];
+                candidates = intersect(candidates, posting);
+            }
+        }
+
+        IntArrayList matches = new IntArrayList();
+        int count = candidates == null ? items.length : candidates.length;
+        for (int i = 0; i < count; i++) {
+            int item = candidates == null ? i : candidates[i];
+            // Trigrams only narrow the candidates down; the substring itself still has to be there
+            if (names[item].contains(text) || paths[item].contains(text)) {
+                matches.add(item);
+            }
+        }
+        return matches.toIntArray();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        if (a == null) return b;
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
@@ -0,0 +1,99 @@
+package dev.hmdain.client.logic;
+
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.locale.Language;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+
+import java.util.Optional;
+
+/**
+ * A node of the recipe graph as the player sees it: either one concrete item, or an item tag whose
+ * members are interchangeable, such as "any planks". Exactly one of {@code item} and {@code tag} is set.
+ */
+public record Material(Item item, TagKey<Item> tag) {
+
+    public static Material of(Item item) {
+        return new Material(item, null);
+    }
+
+    public static Material of(TagKey<Item> tag) {
+        return new Material(null, tag);
+    }
+
+    public boolean isTag() {
+        return tag != null;
+    }
+
+    /**
+     * Returns the item that represents this material in the UI; the first member for tags.
+     */
+    public Item displayItem() {
+        if (item != null) return item;
+        for (Holder<Item> member : BuiltInRegistries.ITEM.getTagOrEmpty(tag)) {
+            return member.value();
+        }
+        return Items.BARRIER;
+    }
+
+    public ItemStack displayStack() {
+        return displayItem().getDefaultInstance();
+    }
+
+    public Component displayName() {
+        if (item != null) {
+            return displayStack().getHoverName();
+        }
+        String key = "tag.item." + tag.location().getNamespace() + "." + tag.location().getPath().replace('/', '.');
+        if (Language.getInstance().has(key)) {
+            return Component.translatable("material.how-much-do-i-actually-need.any", Component.translatable(key));
+        }
+        return Component.translatable("material.how-much-do-i-actually-need.any", Component.literal(humanize(tag.location().getPath())));
+    }
+
+    /**
+     * Whether the given item satisfies this material.
+     */
+    public boolean matches(Item candidate) {
+        return item != null ? item == candidate : candidate.builtInRegistryHolder().is(tag);
+    }
+
+    /**
+     * Stable string form: the item id, or {@code #} followed by the tag id.
+     */
+    public String id() {
+        return item != null ? BuiltInRegistries.ITEM.getKey(item).toString() : "#" + tag.location();
+    }
+
+    public static Optional<Material> parse(String id) {
+        boolean isTag = id.startsWith("#");
+        ResourceLocation location = ResourceLocation.tryParse(isTag ? id.substring(1) : id);
+        if (location == null) return Optional.empty();
+        if (isTag) {
+            return Optional.of(of(TagKey.create(Registries.ITEM, location)));
+        }
+        return BuiltInRegistries.ITEM.getOptional(location).map(Material::of);
+    }
+
+    private static String humanize(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        StringBuilder builder = new StringBuilder(name.length());
+        boolean upper = true;
+        for (char c : name.toCharArray()) {
+            if (c == '_') {
+                builder.append(' ');
+                upper = true;
+            } else {
+                builder.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package dev.hmdain.client.logic;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Forward-only reader for the NBT binary format. Unlike {@code NbtIo}, nothing is materialized: the
+ * caller walks the tags it cares about and skips the rest, so large arrays never have to be held in
+ * memory. Gzip-compressed and uncompressed input are both accepted.
+ */
+final class NbtStream implements Closeable {
+
+    static final int END = 0;
+    static final int BYTE = 1;
+    static final int SHORT = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int FLOAT = 5;
+    static final int DOUBLE = 6;
+    static final int BYTE_ARRAY = 7;
+    static final int STRING = 8;
+    static final int LIST = 9;
+    static final int COMPOUND = 10;
+    static final int INT_ARRAY = 11;
+    static final int LONG_ARRAY = 12;
+
+    private static final int MAX_DEPTH = 512;
+
+    private final DataInputStream in;
+
+    NbtStream(InputStream raw) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(raw, 1 << 16);
+        buffered.mark(2);
+        int magic = buffered.read() | (buffered.read() << 8);
+        buffered.reset();
+        InputStream source = magic == GZIPInputStream.GZIP_MAGIC ? new BufferedInputStream(new GZIPInputStream(buffered, 1 << 16), 1 << 16) : buffered;
+        this.in = new DataInputStream(source);
+    }
+
+    /**
+     * Reads the type of the next named tag; {@link #END} closes the current compound.
+     */
+    int nextType() throws IOException {
+        return in.readUnsignedByte();
+    }
+
+    /**
+     * Reads the name that follows every type except {@link #END} inside a compound.
+     */
+    String name() throws IOException {
+        return in.readUTF();
+    }
+
+    int readInt() throws IOException {
+        return in.readInt();
+    }
+
+    long readLong() throws IOException {
+        return in.readLong();
+    }
+
+    String readString() throws IOException {
+        return in.readUTF();
+    }
+
+    /**
+     * Reads the element type of a list; {@link #readLength()} follows.
+     */
+    int readListType() throws IOException {
+        return in.readUnsignedByte();
+    }
+
+    /**
+     * Reads the length of a list or array.
+     */
+    int readLength() throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Negative NBT length " + length);
+        return length;
+    }
+
+    /**
+     * Reads an integer payload of any numeric type, e.g. for coordinates that may be stored as shorts.
+     */
+    int readNumber(int type) throws IOException {
+        return switch (type) {
+            case BYTE -> in.readByte();
+            case SHORT -> in.readShort();
+            case INT -> in.readInt();
+            case LONG -> (int) in.readLong();
+            default -> {
+                skip(type);
+                yield 0;
+            }
+        };
+    }
+
+    /**
+     * Skips the payload of a tag of the given type.
+     */
+    void skip(int type) throws IOException {
+        skip(type, 0);
+    }
+
+    private void skip(int type, int depth) throws IOException {
+        if (depth > MAX_DEPTH) throw new IOException("NBT nested too deeply");
+        switch (type) {
+            case END -> { }
+            case BYTE -> skipBytes(1);
+            case SHORT -> skipBytes(2);
+            case INT, FLOAT -> skipBytes(4);
+            case LONG, DOUBLE -> skipBytes(8);
+            case BYTE_ARRAY -> skipBytes(readLength());
+            case STRING -> skipBytes(in.readUnsignedShort());
+            case LIST -> {
+                int elementType = readListType();
+                int length = readLength();
+                for (int i = 0; i < length; i++) skip(elementType, depth + 1);
+            }
+            case COMPOUND -> {
+                int entryType;
+                while ((entryType = nextType()) != END) {
+                    skipBytes(in.readUnsignedShort());
+                    skip(entryType, depth + 1);
+                }
+            }
+            case INT_ARRAY -> skipBytes(readLength() * 4L);
+            case LONG_ARRAY -> skipBytes(readLength() * 8L);
+            default -> throw new IOException("Unknown NBT tag type " + type);
+        }
+    }
+
+    private void skipBytes(long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                // skip may return 0 before the end; read to tell that apart from EOF
+                if (in.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,194 @@
+package dev.hmdain.client.logic;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Saved target lists ("projects"), stored per world with one file per project.
+ * <p>
+ * A project file is the item ids followed by varint counts, so even thousands of targets stay small
+ * and read in one pass. Listing the projects of a world only reads the directory; a project's
+ * contents are read when it is selected. All methods except {@link #serialize} do file I/O and are
+ * meant for the indexer thread.
+ */
+public final class ProjectStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
+    private static final Path PROJECTS_DIR = FabricLoader.getInstance().getConfigDir().resolve("how-much-do-i-actually-need").resolve("projects");
+    private static final String EXTENSION = ".hmp";
+    private static final String SELECTED_FILE = "selected.txt";
+    private static final int MAGIC = 0x484D4450; // "HMDP"
+    private static final int FORMAT_VERSION = 1;
+    public static final int MAX_NAME_LENGTH = 32;
+
+    private ProjectStore() {
+    }
+
+    /**
+     * Returns the names of the projects saved for a world, sorted.
+     */
+    public static List<String> list(String worldId) {
+        Path dir = PROJECTS_DIR.resolve(worldId);
+        if (!Files.isDirectory(dir)) return List.of();
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(EXTENSION)) {
+                    String name = decodeName(fileName.substring(0, fileName.length() - EXTENSION.length()));
+                    if (name != null) names.add(name);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Failed to list projects of {}", worldId, e);
+        }
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    /**
+     * Encodes targets in the project format. Runs on the client thread, which owns the targets.
+     */
+    public static byte[] serialize(Collection<ItemStack> targets) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + targets.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            writeVarInt(out, targets.size());
+            for (ItemStack stack : targets) {
+                out.writeUTF(BuiltInRegistries.ITEM.getKey(stack.getItem()).toString());
+                writeVarInt(out, stack.getCount());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a project's targets in their saved order. Returns an empty map if there is no such project
+     * or it cannot be read.
+     */
+    public static Map<Item, Integer> read(String worldId, String name) {
+        Map<Item, Integer> targets = new LinkedHashMap<>();
+        Path path = projectPath(worldId, name);
+        if (!Files.isRegularFile(path)) return targets;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != FORMAT_VERSION) return targets;
+            int size = readVarInt(in);
+            for (int i = 0; i < size; i++) {
+                ResourceLocation id = ResourceLocation.tryParse(in.readUTF());
+                int count = readVarInt(in);
+                // Items of removed mods are dropped
+                if (id != null && count > 0) {
+                    BuiltInRegistries.ITEM.getOptional(id).ifPresent(item -> targets.merge(item, count, Integer::sum));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Discarding unreadable project {} of {}", name, worldId, e);
+            return new LinkedHashMap<>();
+        }
+        return targets;
+    }
+
+    /**
+     * Writes a project, replacing the previous file atomically.
+     */
+    public static void write(String worldId, String name, byte[] data) {
+        Path path = projectPath(worldId, name);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            Files.write(temp, data);
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save project {} of {}", name, worldId, e);
+        }
+    }
+
+    public static void delete(String worldId, String name) {
+        try {
+            Files.deleteIfExists(projectPath(worldId, name));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete project {} of {}", name, worldId, e);
+        }
+    }
+
+    /**
+     * Returns the project that was selected last in a world, or null.
+     */
+    public static String readSelected(String worldId) {
+        Path path = PROJECTS_DIR.resolve(worldId).resolve(SELECTED_FILE);
+        try {
+            return Files.isRegularFile(path) ? Files.readString(path).trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static void writeSelected(String worldId, String name) {
+        Path dir = PROJECTS_DIR.resolve(worldId);
+        try {
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve(SELECTED_FILE), name);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to remember the selected project of {}", worldId, e);
+        }
+    }
+
+    /**
+     * Trims a user-entered name and cuts it to {@link #MAX_NAME_LENGTH}. Returns null if nothing is left.
+     */
+    public static String cleanName(String name) {
+        String trimmed = name.strip();
+        if (trimmed.length() > MAX_NAME_LENGTH) trimmed = trimmed.substring(0, MAX_NAME_LENGTH).strip();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    // Names are hex-encoded in file names, so any name is a valid file name on every platform
+    private static Path projectPath(String worldId, String name) {
+        return PROJECTS_DIR.resolve(worldId).resolve(HexFormat.of().formatHex(name.getBytes(StandardCharsets.UTF_8)) + EXTENSION);
+    }
+
+    private static String decodeName(String hex) {
+        try {
+            return new String(HexFormat.of().parseHex(hex), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("VarInt too long");
+    }
+}
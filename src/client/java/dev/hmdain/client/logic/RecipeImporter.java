@@ -0,0 +1,353 @@
+package dev.hmdain.client.logic;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.screens.recipebook.RecipeCollection;
+import net.minecraft.client.server.IntegratedServer;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.crafting.RecipeHolder;
+import net.minecraft.world.item.crafting.display.FurnaceRecipeDisplay;
+import net.minecraft.world.item.crafting.display.RecipeDisplay;
+import net.minecraft.world.item.crafting.display.RecipeDisplayEntry;
+import net.minecraft.world.item.crafting.display.ShapedCraftingRecipeDisplay;
+import net.minecraft.world.item.crafting.display.ShapelessCraftingRecipeDisplay;
+import net.minecraft.world.item.crafting.display.SlotDisplay;
+import net.minecraft.world.item.crafting.display.SmithingRecipeDisplay;
+import net.minecraft.world.item.crafting.display.StonecutterRecipeDisplay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Builds a {@link RecipeIndex} from the recipes the client actually knows about: the full recipe
+ * manager of the integrated server in singleplayer, the synced recipe book on a remote server.
+ * <p>
+ * {@link #snapshot} only copies references and runs on the client thread; {@link #build} does the
+ * conversion and compilation and is meant for a worker thread.
+ * <p>
+ * When an item has several recipes, one is picked the same way every time, independent of the order
+ * the game lists them in. Reversible recipes come last: those whose single ingredient can be crafted
+ * back from the result, like an ingot from nine nuggets or from its block. Then crafting beats
+ * stonecutting, smithing and cooking, and ties go to the lowest recipe id (or, for recipe book
+ * entries, which have no stable id, the lowest ingredient list). If two items still end up being made
+ * from each other, the one with more such partners is kept as a base material, e.g. the ingot between
+ * its nuggets and its block, or otherwise the one whose recipe splits a single item into several.
+ * <p>
+ * Tag slots become tag materials. Only tags that the hardcoded table gives a recipe, such as any
+ * planks from any logs, are broken down further. Tags that only appear in imported recipes get no
+ * recipe of their own and are listed as base materials ("Any X"), even if each of their members can
+ * be crafted.
+ */
+public final class RecipeImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
+
+    // Lower is preferred when an item has several recipes
+    private static final int PRIORITY_CRAFTING = 0;
+    private static final int PRIORITY_STONECUTTING = 1;
+    private static final int PRIORITY_SMITHING = 2;
+    private static final int PRIORITY_COOKING = 3;
+
+    private RecipeImporter() {
+    }
+
+    /**
+     * Captures the recipe sources of the current world. Must be called on the client thread.
+     */
+    public static Source snapshot(Minecraft client) {
+        IntegratedServer server = client.getSingleplayerServer();
+        if (server != null) {
+            return new Source(List.copyOf(server.getRecipeManager().getRecipes()), List.of());
+        }
+
+        List<RecipeDisplay> displays = new ArrayList<>();
+        if (client.player != null) {
+            for (RecipeCollection collection : client.player.getRecipeBook().getCollections()) {
+                for (RecipeDisplayEntry entry : collection.getRecipes()) {
+                    displays.add(entry.display());
+                }
+            }
+        }
+        return new Source(List.of(), displays);
+    }
+
+    /**
+     * Converts all recipes of the source and merges them with the hardcoded table.
+     * The hardcoded table wins for items it covers, since it already picks one sensible recipe where the
+     * game offers several; imported recipes fill in everything else.
+     */
+    public static RecipeIndex build(Source source, Map<Material, RecipeResolver.RecipeData> fallback) {
+        long start = System.nanoTime();
+        Map<Material, List<Candidate>> candidates = new LinkedHashMap<>();
+
+        for (RecipeHolder<?> holder : source.serverRecipes()) {
+            String id = holder.id().location().toString();
+            List<RecipeDisplay> displays = holder.value().display();
+            for (int i = 0; i < displays.size(); i++) {
+                consider(displays.get(i), displays.size() == 1 ? id : id + "#" + i, candidates);
+            }
+        }
+        for (RecipeDisplay display : source.bookDisplays()) {
+            consider(display, null, candidates);
+        }
+
+        Map<Material, RecipeResolver.RecipeData> imported = choose(candidates, fallback);
+        Map<Material, RecipeResolver.RecipeData> merged = new LinkedHashMap<>(fallback);
+        imported.forEach(merged::putIfAbsent);
+
+        RecipeIndex index = RecipeIndex.compile(merged);
+        LOGGER.info("Indexed {} imported recipes ({} items, {} ingredient edges) in {} ms",
+            imported.size(), index.graph().size(), index.graph().edgeCount(), (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    /**
+     * Content fingerprint of a source, used to key the on-disk index cache. Covers everything
+     * {@link #build} reads, the kind, result and input slots of every recipe, so editing a recipe in
+     * place and reloading misses the cache. Still runs in a fraction of the time of {@link #build},
+     * since nothing is converted or compiled.
+     */
+    public static String fingerprint(Source source) {
+        long hash = 1125899906842597L;
+        for (RecipeHolder<?> holder : source.serverRecipes()) {
+            hash = 31 * hash + holder.id().location().hashCode();
+            for (RecipeDisplay display : holder.value().display()) {
+                hash = hashDisplay(hash, display);
+            }
+        }
+        for (RecipeDisplay display : source.bookDisplays()) {
+            hash = hashDisplay(hash, display);
+        }
+        return source.size() + ":" + Long.toHexString(hash);
+    }
+
+    private static long hashDisplay(long hash, RecipeDisplay display) {
+        hash = 31 * hash + display.getClass().getName().hashCode();
+        hash = hashSlot(hash, display.result());
+        List<SlotDisplay> inputs = inputsOf(display);
+        if (inputs != null) {
+            for (SlotDisplay input : inputs) {
+                hash = hashSlot(hash, input);
+            }
+        }
+        return hash;
+    }
+
+    private static long hashSlot(long hash, SlotDisplay display) {
+        hash = 31 * hash + display.getClass().getName().hashCode();
+        if (display instanceof SlotDisplay.ItemSlotDisplay item) {
+            hash = 31 * hash + BuiltInRegistries.ITEM.getId(item.item().value());
+        } else if (display instanceof SlotDisplay.ItemStackSlotDisplay stack) {
+            hash = 31 * hash + BuiltInRegistries.ITEM.getId(stack.stack().getItem());
+            hash = 31 * hash + stack.stack().getCount();
+        } else if (display instanceof SlotDisplay.TagSlotDisplay tag) {
+            hash = 31 * hash + tag.tag().location().hashCode();
+        } else if (display instanceof SlotDisplay.WithRemainder withRemainder) {
+            hash = hashSlot(hash, withRemainder.input());
+            hash = hashSlot(hash, withRemainder.remainder());
+        } else if (display instanceof SlotDisplay.Composite composite) {
+            for (SlotDisplay option : composite.contents()) {
+                hash = hashSlot(hash, option);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the input slots of the recipe kinds that are imported, or null for any other kind.
+     */
+    private static List<SlotDisplay> inputsOf(RecipeDisplay display) {
+        if (display instanceof ShapedCraftingRecipeDisplay shaped) {
+            return shaped.ingredients();
+        } else if (display instanceof ShapelessCraftingRecipeDisplay shapeless) {
+            return shapeless.ingredients();
+        } else if (display instanceof StonecutterRecipeDisplay stonecutter) {
+            return List.of(stonecutter.input());
+        } else if (display instanceof SmithingRecipeDisplay smithing) {
+            return List.of(smithing.template(), smithing.base(), smithing.addition());
+        } else if (display instanceof FurnaceRecipeDisplay furnace) {
+            return List.of(furnace.ingredient());
+        }
+        return null;
+    }
+
+    private static int priorityOf(RecipeDisplay display) {
+        if (display instanceof StonecutterRecipeDisplay) return PRIORITY_STONECUTTING;
+        if (display instanceof SmithingRecipeDisplay) return PRIORITY_SMITHING;
+        if (display instanceof FurnaceRecipeDisplay) return PRIORITY_COOKING;
+        return PRIORITY_CRAFTING;
+    }
+
+    /**
+     * Converts a recipe and adds it to the candidates of its result.
+     *
+     * @param id the recipe id, or null if there is none
+     */
+    private static void consider(RecipeDisplay display, String id, Map<Material, List<Candidate>> candidates) {
+        List<SlotDisplay> inputs = inputsOf(display);
+        if (inputs == null) return;
+        int priority = priorityOf(display);
+
+        ItemStack result = resolve(display.result());
+        if (result.isEmpty()) return;
+        Material resultMaterial = Material.of(result.getItem());
+
+        Map<Material, Integer> counts = new LinkedHashMap<>();
+        for (SlotDisplay input : inputs) {
+            Material material = resolveIngredient(input);
+            if (material != null) {
+                counts.merge(material, 1, Integer::sum);
+                continue;
+            }
+            ItemStack stack = resolve(input);
+            if (!stack.isEmpty()) {
+                counts.merge(Material.of(stack.getItem()), stack.getCount(), Integer::sum);
+            }
+        }
+        if (counts.isEmpty()) return;
+
+        List<RecipeResolver.IngredientData> ingredients = new ArrayList<>(counts.size());
+        StringBuilder contents = new StringBuilder();
+        counts.forEach((material, count) -> {
+            ingredients.add(new RecipeResolver.IngredientData(material, count));
+            contents.append(material.id()).append('*').append(count).append(';');
+        });
+        candidates.computeIfAbsent(resultMaterial, material -> new ArrayList<>()).add(new Candidate(
+            new RecipeResolver.RecipeData(resultMaterial, result.getCount(), List.copyOf(ingredients)), priority,
+            id != null ? id : "~" + contents));
+    }
+
+    /**
+     * Picks one recipe per result, see the class doc. Results the fallback table covers are skipped.
+     */
+    private static Map<Material, RecipeResolver.RecipeData> choose(Map<Material, List<Candidate>> candidates,
+                                                                   Map<Material, RecipeResolver.RecipeData> fallback) {
+        // For every material, the materials it forms a reversible pair with
+        Map<Material, Set<Material>> partners = new HashMap<>();
+        candidates.forEach((result, options) -> {
+            for (Candidate candidate : options) {
+                Material ingredient = singleIngredient(candidate.recipe());
+                if (ingredient != null && craftsFrom(ingredient, result, candidates, fallback)) {
+                    partners.computeIfAbsent(result, material -> new HashSet<>()).add(ingredient);
+                }
+            }
+        });
+
+        Map<Material, RecipeResolver.RecipeData> chosen = new LinkedHashMap<>();
+        candidates.forEach((result, options) -> {
+            if (fallback.containsKey(result)) return;
+            Set<Material> reversible = partners.getOrDefault(result, Set.of());
+            Comparator<Candidate> order = Comparator
+                .comparing((Candidate candidate) -> {
+                    Material ingredient = singleIngredient(candidate.recipe());
+                    return ingredient != null && reversible.contains(ingredient);
+                })
+                .thenComparingInt(Candidate::priority)
+                .thenComparing(Candidate::key);
+            chosen.put(result, options.stream().min(order).orElseThrow().recipe());
+        });
+
+        // Pairs that would still be made from each other; decided from the choices above, so the
+        // outcome does not depend on the order they are visited in
+        List<Material> bases = new ArrayList<>();
+        chosen.forEach((result, recipe) -> {
+            Material ingredient = singleIngredient(recipe);
+            if (ingredient == null) return;
+            RecipeResolver.RecipeData back = fallback.containsKey(ingredient) ? fallback.get(ingredient) : chosen.get(ingredient);
+            if (back == null || !result.equals(singleIngredient(back))) return;
+            if (fallback.containsKey(ingredient) || keepsAsBase(result, recipe, ingredient, back, partners)) {
+                bases.add(result);
+            }
+        });
+        bases.forEach(chosen::remove);
+        return chosen;
+    }
+
+    /**
+     * Decides which side of a pair made from each other stays a base material: the one with more
+     * reversible partners, or on a tie the one whose recipe splits one item into several.
+     */
+    private static boolean keepsAsBase(Material result, RecipeResolver.RecipeData recipe, Material other,
+                                       RecipeResolver.RecipeData otherRecipe, Map<Material, Set<Material>> partners) {
+        int resultPartners = partners.getOrDefault(result, Set.of()).size();
+        int otherPartners = partners.getOrDefault(other, Set.of()).size();
+        if (resultPartners != otherPartners) return resultPartners > otherPartners;
+        boolean splits = recipe.resultCount() > recipe.ingredients().get(0).count();
+        boolean otherSplits = otherRecipe.resultCount() > otherRecipe.ingredients().get(0).count();
+        if (splits != otherSplits) return splits;
+        return result.id().compareTo(other.id()) < 0;
+    }
+
+    private static boolean craftsFrom(Material result, Material ingredient, Map<Material, List<Candidate>> candidates,
+                                      Map<Material, RecipeResolver.RecipeData> fallback) {
+        RecipeResolver.RecipeData fixed = fallback.get(result);
+        if (fixed != null) return ingredient.equals(singleIngredient(fixed));
+        for (Candidate candidate : candidates.getOrDefault(result, List.of())) {
+            if (ingredient.equals(singleIngredient(candidate.recipe()))) return true;
+        }
+        return false;
+    }
+
+    private static Material singleIngredient(RecipeResolver.RecipeData recipe) {
+        return recipe.ingredients().size() == 1 ? recipe.ingredients().get(0).material() : null;
+    }
+
+    /**
+     * Keeps tag slots with more than one member as tag materials, so "any planks" stays one node instead
+     * of silently becoming oak. Returns null for every other slot, which {@link #resolve} handles.
+     */
+    private static Material resolveIngredient(SlotDisplay display) {
+        if (display instanceof SlotDisplay.WithRemainder withRemainder) {
+            return resolveIngredient(withRemainder.input());
+        }
+        if (!(display instanceof SlotDisplay.TagSlotDisplay tag)) return null;
+
+        int members = 0;
+        for (Holder<Item> ignored : BuiltInRegistries.ITEM.getTagOrEmpty(tag.tag())) {
+            if (++members > 1) return Material.of(tag.tag());
+        }
+        return null;
+    }
+
+    /**
+     * Picks a concrete item for a slot. Tags resolve to their first member; ingredients go through
+     * {@link #resolveIngredient} first.
+     */
+    private static ItemStack resolve(SlotDisplay display) {
+        if (display instanceof SlotDisplay.ItemSlotDisplay item) {
+            return new ItemStack(item.item());
+        } else if (display instanceof SlotDisplay.ItemStackSlotDisplay stack) {
+            return stack.stack();
+        } else if (display instanceof SlotDisplay.TagSlotDisplay tag) {
+            for (Holder<Item> member : BuiltInRegistries.ITEM.getTagOrEmpty(tag.tag())) {
+                return new ItemStack(member);
+            }
+        } else if (display instanceof SlotDisplay.WithRemainder withRemainder) {
+            return resolve(withRemainder.input());
+        } else if (display instanceof SlotDisplay.Composite composite) {
+            for (SlotDisplay option : composite.contents()) {
+                ItemStack stack = resolve(option);
+                if (!stack.isEmpty()) return stack;
+            }
+        }
+        return ItemStack.EMPTY;
+    }
+
+    /**
+     * References to everything a world offers as recipes, captured on the client thread.
+     */
+    public record Source(Collection<RecipeHolder<?>> serverRecipes, List<RecipeDisplay> bookDisplays) {
+
+        public int size() {
+            return serverRecipes.size() + bookDisplays.size();
+        }
+    }
+
+    /**
+     * @param key the recipe id, or the ingredient list for recipes without one; breaks ties
+     */
+    private record Candidate(RecipeResolver.RecipeData recipe, int priority, String key) {}
+}
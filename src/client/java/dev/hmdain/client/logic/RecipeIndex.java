@@ -0,0 +1,156 @@
+package dev.hmdain.client.logic;
+
+import dev.hmdain.core.RecipeGraph;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable, compiled recipe set: the recipes by result material, the dense material ids and the
+ * {@link RecipeGraph} built from them. Built off-thread and swapped into the {@link RecipeResolver} as a whole.
+ */
+public final class RecipeIndex {
+
+    private static final int[] NO_TAGS = new int[0];
+
+    private final Map<Material, RecipeResolver.RecipeData> recipes;
+    private final Object2IntMap<Material> materialIds;
+    private final List<Material> materials;
+    private final RecipeGraph graph;
+    private final int[] tagIds;
+    // Tag ids per member item; built on first use, since tags are bound after the fallback index is
+    private volatile Reference2ObjectMap<Item, int[]> itemTags;
+
+    private RecipeIndex(Map<Material, RecipeResolver.RecipeData> recipes, Object2IntMap<Material> materialIds, List<Material> materials, RecipeGraph graph) {
+        this.recipes = recipes;
+        this.materialIds = materialIds;
+        this.materials = materials;
+        this.graph = graph;
+        this.tagIds = IntStream.range(0, materials.size()).filter(id -> materials.get(id).isTag()).toArray();
+    }
+
+    /**
+     * Assigns ids to every material that has a recipe or appears in one and packs the recipes into a graph.
+     * Ids follow the iteration order of {@code recipes}.
+     */
+    public static RecipeIndex compile(Map<Material, RecipeResolver.RecipeData> recipes) {
+        Object2IntMap<Material> materialIds = new Object2IntOpenHashMap<>();
+        materialIds.defaultReturnValue(-1);
+        List<Material> materials = new ArrayList<>();
+        RecipeGraph.Builder builder = new RecipeGraph.Builder();
+
+        for (RecipeResolver.RecipeData recipe : recipes.values()) {
+            int result = idFor(recipe.result(), materialIds, materials);
+            List<RecipeResolver.IngredientData> ingredients = recipe.ingredients();
+            int[] ingredientIds = new int[ingredients.size()];
+            int[] counts = new int[ingredients.size()];
+            for (int i = 0; i < ingredients.size(); i++) {
+                ingredientIds[i] = idFor(ingredients.get(i).material(), materialIds, materials);
+                counts[i] = ingredients.get(i).count();
+            }
+            builder.recipe(result, recipe.resultCount(), ingredientIds, counts);
+        }
+
+        return new RecipeIndex(Collections.unmodifiableMap(recipes), materialIds, Collections.unmodifiableList(materials), builder.build(materials.size()));
+    }
+
+    /**
+     * Recreates an index from a graph whose node ids map to {@code materials}, the inverse of {@link #compile}.
+     */
+    public static RecipeIndex fromGraph(List<Material> materials, RecipeGraph graph) {
+        if (materials.size() != graph.size()) {
+            throw new IllegalArgumentException("Graph has " + graph.size() + " nodes but " + materials.size() + " materials were given");
+        }
+        Object2IntMap<Material> materialIds = new Object2IntOpenHashMap<>();
+        materialIds.defaultReturnValue(-1);
+        Map<Material, RecipeResolver.RecipeData> recipes = new LinkedHashMap<>();
+
+        for (int id = 0; id < materials.size(); id++) {
+            materialIds.put(materials.get(id), id);
+        }
+        for (int id = 0; id < materials.size(); id++) {
+            if (graph.outputCount(id) == 0) continue;
+            List<RecipeResolver.IngredientData> ingredients = new ArrayList<>(graph.ingredientEnd(id) - graph.ingredientStart(id));
+            for (int edge = graph.ingredientStart(id); edge < graph.ingredientEnd(id); edge++) {
+                ingredients.add(new RecipeResolver.IngredientData(materials.get(graph.ingredientId(edge)), graph.ingredientCount(edge)));
+            }
+            recipes.put(materials.get(id), new RecipeResolver.RecipeData(materials.get(id), graph.outputCount(id), List.copyOf(ingredients)));
+        }
+
+        return new RecipeIndex(Collections.unmodifiableMap(recipes), materialIds, List.copyOf(materials), graph);
+    }
+
+    private static int idFor(Material material, Object2IntMap<Material> materialIds, List<Material> materials) {
+        int id = materialIds.getInt(material);
+        if (id < 0) {
+            id = materials.size();
+            materialIds.put(material, id);
+            materials.add(material);
+        }
+        return id;
+    }
+
+    public Map<Material, RecipeResolver.RecipeData> recipes() {
+        return recipes;
+    }
+
+    public RecipeGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the graph id of a material, or -1 if it neither has a recipe nor appears in one.
+     */
+    public int getId(Material material) {
+        return materialIds.getInt(material);
+    }
+
+    public Material getMaterial(int id) {
+        return materials.get(id);
+    }
+
+    /**
+     * Returns the ids of all tag materials. The array is shared and must not be modified.
+     */
+    public int[] tagIds() {
+        return tagIds;
+    }
+
+    /**
+     * Returns the ids of the tag materials an item belongs to, in ascending order. The array is shared
+     * and must not be modified.
+     */
+    public int[] tagsOf(Item item) {
+        Reference2ObjectMap<Item, int[]> tags = itemTags;
+        if (tags == null) {
+            // Building twice from two threads is harmless; both see the same registry
+            tags = new Reference2ObjectOpenHashMap<>();
+            for (int tagId : tagIds) {
+                for (Holder<Item> member : BuiltInRegistries.ITEM.getTagOrEmpty(materials.get(tagId).tag())) {
+                    int[] previous = tags.getOrDefault(member.value(), NO_TAGS);
+                    int[] next = Arrays.copyOf(previous, previous.length + 1);
+                    next[previous.length] = tagId;
+                    tags.put(member.value(), next);
+                }
+            }
+            itemTags = tags;
+        }
+        return tags.getOrDefault(item, NO_TAGS);
+    }
+
+    public List<Material> materials() {
+        return materials;
+    }
+}
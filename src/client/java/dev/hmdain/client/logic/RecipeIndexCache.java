@@ -0,0 +1,210 @@
+package dev.hmdain.client.logic;
+
+import dev.hmdain.core.RecipeGraph;
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.ModContainer;
+import net.minecraft.SharedConstants;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ServerData;
+import net.minecraft.client.server.IntegratedServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Persists compiled {@link RecipeIndex}es as compact binary files, so a world whose recipes did not change
+ * loads its index with a memory-mapped read instead of importing everything again.
+ * <p>
+ * Files are keyed by a hash of the Minecraft version, the installed mods, the world's data packs (or the
+ * server address) and a fingerprint of the recipes themselves. Any change produces a new key and the
+ * index is rebuilt. Only the most recently used files are kept.
+ */
+public final class RecipeIndexCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
+    private static final Path CACHE_DIR = FabricLoader.getInstance().getConfigDir().resolve("how-much-do-i-actually-need").resolve("cache");
+    private static final int MAGIC = 0x484D4449; // "HMDI"
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_FILES = 8;
+
+    private RecipeIndexCache() {
+    }
+
+    /**
+     * Describes where the recipes come from. Must be called on the client thread.
+     */
+    public static String worldKey(Minecraft client) {
+        StringBuilder key = new StringBuilder();
+        key.append(SharedConstants.getCurrentVersion().getName()).append('\n');
+
+        FabricLoader.getInstance().getAllMods().stream()
+            .map(ModContainer::getMetadata)
+            .map(metadata -> metadata.getId() + "@" + metadata.getVersion().getFriendlyString())
+            .sorted()
+            .forEach(mod -> key.append(mod).append(';'));
+        key.append('\n');
+
+        IntegratedServer server = client.getSingleplayerServer();
+        ServerData serverData = client.getCurrentServer();
+        if (server != null) {
+            // World-local data packs share names across worlds, so the world itself is part of the key
+            key.append("world:").append(server.getWorldData().getLevelName()).append('\n');
+            server.getPackRepository().getSelectedIds().forEach(pack -> key.append(pack).append(';'));
+        } else if (serverData != null) {
+            key.append("server:").append(serverData.ip);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Combines the world key with the recipe fingerprint into a file-name-safe cache key.
+     */
+    public static String key(String worldKey, RecipeImporter.Source source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(worldKey.getBytes(StandardCharsets.UTF_8));
+            digest.update(RecipeImporter.fingerprint(source).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads the index stored under {@code key}, or returns null if there is none or it cannot be used.
+     */
+    public static RecipeIndex load(String key) {
+        Path path = CACHE_DIR.resolve(key + ".bin");
+        if (!Files.isRegularFile(path)) return null;
+
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return null;
+
+            int size = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            List<Material> materials = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte[] id = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(id);
+                String name = new String(id, StandardCharsets.US_ASCII);
+                Optional<Material> material = Material.parse(name);
+                if (material.isEmpty()) {
+                    LOGGER.warn("Discarding recipe cache {}: unknown material {}", key, name);
+                    return null;
+                }
+                materials.add(material.get());
+            }
+
+            int[] outputCounts = readInts(buffer, size);
+            int[] offsets = readInts(buffer, size + 1);
+            int[] ingredientIds = readInts(buffer, edgeCount);
+            int[] counts = readInts(buffer, edgeCount);
+
+            RecipeIndex index = RecipeIndex.fromGraph(materials, RecipeGraph.fromArrays(offsets, ingredientIds, counts, outputCounts));
+            touch(path);
+            LOGGER.info("Loaded cached recipe graph ({} items) in {} ms", size, (System.nanoTime() - start) / 1_000_000);
+            return index;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Discarding unreadable recipe cache {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes an index under {@code key}. The file is written to a temporary name and moved into place,
+     * so a crash never leaves a truncated cache behind.
+     */
+    public static void save(String key, RecipeIndex index) {
+        RecipeGraph graph = index.graph();
+        Path path = CACHE_DIR.resolve(key + ".bin");
+        Path temp = CACHE_DIR.resolve(key + ".tmp");
+
+        try {
+            Files.createDirectories(CACHE_DIR);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(graph.size());
+                out.writeInt(graph.edgeCount());
+                for (Material material : index.materials()) {
+                    byte[] id = material.id().getBytes(StandardCharsets.US_ASCII);
+                    out.writeShort(id.length);
+                    out.write(id);
+                }
+                for (int node = 0; node < graph.size(); node++) {
+                    out.writeInt(graph.outputCount(node));
+                }
+                for (int node = 0; node < graph.size(); node++) {
+                    out.writeInt(graph.ingredientStart(node));
+                }
+                out.writeInt(graph.edgeCount());
+                for (int edge = 0; edge < graph.edgeCount(); edge++) {
+                    out.writeInt(graph.ingredientId(edge));
+                }
+                for (int edge = 0; edge < graph.edgeCount(); edge++) {
+                    out.writeInt(graph.ingredientCount(edge));
+                }
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            evictOldFiles();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write recipe cache {}", key, e);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // Only affects eviction order
+        }
+    }
+
+    private static void evictOldFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(CACHE_DIR)) {
+            files = stream.filter(file -> file.getFileName().toString().endsWith(".bin")).toList();
+        }
+        if (files.size() <= MAX_FILES) return;
+
+        List<Path> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(RecipeIndexCache::lastModified).reversed());
+        for (Path stale : sorted.subList(MAX_FILES, sorted.size())) {
+            Files.deleteIfExists(stale);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package dev.hmdain.client.logic;
 
+import dev.hmdain.core.ClosureCache;
+import dev.hmdain.core.RecipeGraph;
+import net.minecraft.tags.ItemTags;
+import net.minecraft.tags.TagKey;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.Items;
 import org.slf4j.Logger;
@@ -10,12 +14,17 @@ import java.util.*;
 /**
  * RecipeResolver with hardcoded vanilla recipes for reliable client-side recipe lookup.
  * This approach works without needing unlocked recipes in the recipe book.
+ * <p>
+ * The hardcoded table is the fallback; once a world is joined, {@link RecipeImporter} builds a
+ * {@link RecipeIndex} from the recipes the client actually has and it is swapped in with {@link #install}.
  */
 public class RecipeResolver {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
-    private final Map<Item, RecipeData> recipeDatabase = new HashMap<>();
-    private final Map<Item, Optional<RecipeData>> recipeCache = new HashMap<>();
+    private static final int CLOSURE_CACHE_SIZE = 1024;
+    private final Map<Material, RecipeData> recipeDatabase = new LinkedHashMap<>();
+    private final ClosureCache closureCache = new ClosureCache(CLOSURE_CACHE_SIZE);
+    private RecipeIndex index;
     private boolean initialized = false;
 
     public RecipeResolver() {
@@ -24,19 +33,71 @@ public class RecipeResolver {
     /**
      * Attempts to find recipe data for an item.
      */
-    public Optional<RecipeData> findRecipe(Item item) {
+    public Optional<RecipeData> findRecipe(Material material) {
+        return Optional.ofNullable(getIndex().recipes().get(material));
+    }
+
+    /**
+     * Returns the active recipe index, compiling the hardcoded table on first use.
+     */
+    public RecipeIndex getIndex() {
+        if (index == null) {
+            index = RecipeIndex.compile(getFallbackRecipes());
+            LOGGER.info("Compiled recipe graph with {} items and {} ingredient edges", index.graph().size(), index.graph().edgeCount());
+        }
+        return index;
+    }
+
+    public RecipeGraph getGraph() {
+        return getIndex().graph();
+    }
+
+    /**
+     * Returns the graph id of a material, or -1 if it neither has a recipe nor appears in one.
+     */
+    public int getId(Material material) {
+        return getIndex().getId(material);
+    }
+
+    public Material getMaterial(int id) {
+        return getIndex().getMaterial(id);
+    }
+
+    /**
+     * Returns the cached expansion closure of a node, see {@link ClosureCache#closureOf}.
+     */
+    public int[] getClosure(int id) {
+        return closureCache.closureOf(getGraph(), id);
+    }
+
+    public ClosureCache getClosureCache() {
+        return closureCache;
+    }
+
+    /**
+     * Replaces the active recipes, e.g. with ones imported from the current world.
+     */
+    public void install(RecipeIndex index) {
+        this.index = index;
+        closureCache.clear();
+    }
+
+    /**
+     * Drops imported recipes and goes back to the hardcoded table.
+     */
+    public void resetToFallback() {
+        install(null);
+    }
+
+    /**
+     * Returns the hardcoded recipe table. Safe to call from any thread.
+     */
+    public synchronized Map<Material, RecipeData> getFallbackRecipes() {
         if (!initialized) {
             initializeRecipeDatabase();
             initialized = true;
         }
-        
-        if (recipeCache.containsKey(item)) {
-            return recipeCache.get(item);
-        }
-        
-        Optional<RecipeData> recipe = Optional.ofNullable(recipeDatabase.get(item));
-        recipeCache.put(item, recipe);
-        return recipe;
+        return Collections.unmodifiableMap(recipeDatabase);
     }
     
     private void initializeRecipeDatabase() {
@@ -56,19 +117,22 @@ public class RecipeResolver {
         addRecipe(Items.WARPED_PLANKS, 4, Items.WARPED_STEM, 1);
         addRecipe(Items.BAMBOO_PLANKS, 2, Items.BAMBOO_BLOCK, 1);
         
+        // Any planks from any log, for recipes that accept every wood type
+        addTagRecipe(ItemTags.PLANKS, 4, IngredientData.ofTag(ItemTags.LOGS, 1));
+        
         // Sticks
-        addRecipe(Items.STICK, 4, Items.OAK_PLANKS, 2);
+        addRecipeMulti(Items.STICK, 4, IngredientData.ofTag(ItemTags.PLANKS, 2));
         
         // Crafting Table
-        addRecipe(Items.CRAFTING_TABLE, 1, Items.OAK_PLANKS, 4);
+        addRecipeMulti(Items.CRAFTING_TABLE, 1, IngredientData.ofTag(ItemTags.PLANKS, 4));
         
         // Chest
-        addRecipe(Items.CHEST, 1, Items.OAK_PLANKS, 8);
+        addRecipeMulti(Items.CHEST, 1, IngredientData.ofTag(ItemTags.PLANKS, 8));
         
         // Bookshelf (3 books + 6 planks)
         addRecipeMulti(Items.BOOKSHELF, 1, 
             new IngredientData(Items.BOOK, 3),
-            new IngredientData(Items.OAK_PLANKS, 6));
+            IngredientData.ofTag(ItemTags.PLANKS, 6));
         
         // Book (3 paper + 1 leather)
         addRecipeMulti(Items.BOOK, 1,
@@ -80,11 +144,11 @@ public class RecipeResolver {
         
         // === TOOLS ===
         // Wooden tools
-        addRecipeMulti(Items.WOODEN_PICKAXE, 1, new IngredientData(Items.OAK_PLANKS, 3), new IngredientData(Items.STICK, 2));
-        addRecipeMulti(Items.WOODEN_AXE, 1, new IngredientData(Items.OAK_PLANKS, 3), new IngredientData(Items.STICK, 2));
-        addRecipeMulti(Items.WOODEN_SHOVEL, 1, new IngredientData(Items.OAK_PLANKS, 1), new IngredientData(Items.STICK, 2));
-        addRecipeMulti(Items.WOODEN_SWORD, 1, new IngredientData(Items.OAK_PLANKS, 2), new IngredientData(Items.STICK, 1));
-        addRecipeMulti(Items.WOODEN_HOE, 1, new IngredientData(Items.OAK_PLANKS, 2), new IngredientData(Items.STICK, 2));
+        addRecipeMulti(Items.WOODEN_PICKAXE, 1, IngredientData.ofTag(ItemTags.PLANKS, 3), new IngredientData(Items.STICK, 2));
+        addRecipeMulti(Items.WOODEN_AXE, 1, IngredientData.ofTag(ItemTags.PLANKS, 3), new IngredientData(Items.STICK, 2));
+        addRecipeMulti(Items.WOODEN_SHOVEL, 1, IngredientData.ofTag(ItemTags.PLANKS, 1), new IngredientData(Items.STICK, 2));
+        addRecipeMulti(Items.WOODEN_SWORD, 1, IngredientData.ofTag(ItemTags.PLANKS, 2), new IngredientData(Items.STICK, 1));
+        addRecipeMulti(Items.WOODEN_HOE, 1, IngredientData.ofTag(ItemTags.PLANKS, 2), new IngredientData(Items.STICK, 2));
         
         // Stone tools
         addRecipeMulti(Items.STONE_PICKAXE, 1, new IngredientData(Items.COBBLESTONE, 3), new IngredientData(Items.STICK, 2));
@@ -175,7 +239,7 @@ public class RecipeResolver {
         
         // === REDSTONE ===
         addRecipeMulti(Items.PISTON, 1,
-            new IngredientData(Items.OAK_PLANKS, 3),
+            IngredientData.ofTag(ItemTags.PLANKS, 3),
             new IngredientData(Items.COBBLESTONE, 4),
             new IngredientData(Items.IRON_INGOT, 1),
             new IngredientData(Items.REDSTONE, 1));
@@ -221,7 +285,7 @@ public class RecipeResolver {
         addRecipeMulti(Items.BOW, 1, new IngredientData(Items.STICK, 3), new IngredientData(Items.STRING, 3));
         addRecipeMulti(Items.ARROW, 4, new IngredientData(Items.FLINT, 1), new IngredientData(Items.STICK, 1), new IngredientData(Items.FEATHER, 1));
         addRecipe(Items.FURNACE, 1, Items.COBBLESTONE, 8);
-        addRecipe(Items.SMOKER, 1, Items.FURNACE, 1, Items.OAK_LOG, 4);
+        addRecipeMulti(Items.SMOKER, 1, new IngredientData(Items.FURNACE, 1), IngredientData.ofTag(ItemTags.LOGS, 4));
         addRecipe(Items.BLAST_FURNACE, 1, Items.FURNACE, 1, Items.IRON_INGOT, 5, Items.SMOOTH_STONE, 3);
         addRecipeMulti(Items.ANVIL, 1, new IngredientData(Items.IRON_BLOCK, 3), new IngredientData(Items.IRON_INGOT, 4));
         addRecipeMulti(Items.ENCHANTING_TABLE, 1, new IngredientData(Items.BOOK, 1), new IngredientData(Items.DIAMOND, 2), new IngredientData(Items.OBSIDIAN, 4));
@@ -240,7 +304,7 @@ public class RecipeResolver {
         addRecipe(Items.HOPPER_MINECART, 1, Items.MINECART, 1, Items.HOPPER, 1);
         
         // Beds
-        addRecipe(Items.WHITE_BED, 1, Items.WHITE_WOOL, 3, Items.OAK_PLANKS, 3);
+        addRecipeMulti(Items.WHITE_BED, 1, new IngredientData(Items.WHITE_WOOL, 3), IngredientData.ofTag(ItemTags.PLANKS, 3));
         
         // Doors and trapdoors
         addRecipe(Items.OAK_DOOR, 3, Items.OAK_PLANKS, 6);
@@ -291,35 +355,45 @@ public class RecipeResolver {
     }
     
     private void addRecipe(Item result, int resultCount, Item ingredient, int ingredientCount) {
-        recipeDatabase.put(result, new RecipeData(result, resultCount, 
-            List.of(new IngredientData(ingredient, ingredientCount))));
+        addRecipeMulti(result, resultCount, new IngredientData(ingredient, ingredientCount));
     }
     
     private void addRecipe(Item result, int resultCount, Item ing1, int count1, Item ing2, int count2) {
-        recipeDatabase.put(result, new RecipeData(result, resultCount,
-            List.of(new IngredientData(ing1, count1), new IngredientData(ing2, count2))));
+        addRecipeMulti(result, resultCount, new IngredientData(ing1, count1), new IngredientData(ing2, count2));
     }
     
     private void addRecipe(Item result, int resultCount, Item ing1, int count1, Item ing2, int count2, Item ing3, int count3) {
-        recipeDatabase.put(result, new RecipeData(result, resultCount,
-            List.of(new IngredientData(ing1, count1), new IngredientData(ing2, count2), new IngredientData(ing3, count3))));
+        addRecipeMulti(result, resultCount, new IngredientData(ing1, count1), new IngredientData(ing2, count2), new IngredientData(ing3, count3));
     }
     
     private void addRecipeMulti(Item result, int resultCount, IngredientData... ingredients) {
-        recipeDatabase.put(result, new RecipeData(result, resultCount, List.of(ingredients)));
+        recipeDatabase.put(Material.of(result), new RecipeData(Material.of(result), resultCount, List.of(ingredients)));
+    }
+    
+    private void addTagRecipe(TagKey<Item> result, int resultCount, IngredientData... ingredients) {
+        recipeDatabase.put(Material.of(result), new RecipeData(Material.of(result), resultCount, List.of(ingredients)));
     }
     
     public void clearCache() {
-        recipeCache.clear();
+        closureCache.clear();
     }
     
     /**
      * Record to hold recipe data.
      */
-    public record RecipeData(Item resultItem, int resultCount, List<IngredientData> ingredients) {}
+    public record RecipeData(Material result, int resultCount, List<IngredientData> ingredients) {}
     
     /**
-     * Record to hold ingredient data.
+     * Record to hold ingredient data. The material may be a tag, meaning any of its members will do.
      */
-    public record IngredientData(Item item, int count) {}
+    public record IngredientData(Material material, int count) {
+
+        public IngredientData(Item item, int count) {
+            this(Material.of(item), count);
+        }
+
+        public static IngredientData ofTag(TagKey<Item> tag, int count) {
+            return new IngredientData(Material.of(tag), count);
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package dev.hmdain.client.logic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What one published solve changed compared to the previous published result. Only materials whose
+ * count actually changed are listed; a count of 0 means the material is not needed (anymore).
+ */
+public record ResultChange(long version, List<Entry> entries) {
+
+    public record Entry(Material material, long oldCount, long newCount) {
+
+        public boolean isAdded() {
+            return oldCount == 0;
+        }
+
+        public boolean isRemoved() {
+            return newCount == 0;
+        }
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public List<Material> added() {
+        return entries.stream().filter(Entry::isAdded).map(Entry::material).toList();
+    }
+
+    public List<Material> removed() {
+        return entries.stream().filter(Entry::isRemoved).map(Entry::material).toList();
+    }
+
+    /**
+     * Compares two results.
+     *
+     * @param candidates the only materials that may have changed, or null to compare everything
+     */
+    static ResultChange diff(long version, Map<Material, Long> before, Map<Material, Long> after, Collection<Material> candidates) {
+        List<Entry> entries = new ArrayList<>();
+        if (candidates != null) {
+            for (Material material : candidates) {
+                addIfChanged(entries, material, before, after);
+            }
+        } else {
+            for (Material material : before.keySet()) {
+                addIfChanged(entries, material, before, after);
+            }
+            for (Material material : after.keySet()) {
+                if (!before.containsKey(material)) addIfChanged(entries, material, before, after);
+            }
+        }
+        return new ResultChange(version, List.copyOf(entries));
+    }
+
+    private static void addIfChanged(List<Entry> entries, Material material, Map<Material, Long> before, Map<Material, Long> after) {
+        long oldCount = before.getOrDefault(material, 0L);
+        long newCount = after.getOrDefault(material, 0L);
+        if (oldCount != newCount) {
+            entries.add(new Entry(material, oldCount, newCount));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package dev.hmdain.client.logic;
+
+/**
+ * Notified on the client thread after a solve changed the results, see
+ * {@link ClientState#addResultListener}. Solves that change nothing are not reported.
+ */
+@FunctionalInterface
+public interface ResultListener {
+
+    /**
+     * @param snapshot the results after the change
+     * @param change   the materials whose count changed; never empty
+     */
+    void onResultsChanged(ResultSnapshot snapshot, ResultChange change);
+}
@@ -0,0 +1,13 @@
+package dev.hmdain.client.logic;
+
+import java.util.Map;
+
+/**
+ * Immutable result of one completed solve.
+ * The version increases with every request made to the solver, so readers can tell whether
+ * anything changed since they last looked.
+ */
+public record ResultSnapshot(long version, Map<Material, Long> results) {
+
+    public static final ResultSnapshot EMPTY = new ResultSnapshot(0, Map.of());
+}
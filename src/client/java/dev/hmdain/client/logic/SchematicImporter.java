@@ -0,0 +1,310 @@
+package dev.hmdain.client.logic;
+
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.level.block.Block;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Counts the items needed to build a vanilla structure ({@code .nbt}) or a Litematica schematic
+ * ({@code .litematic}).
+ * <p>
+ * Files are streamed with {@link NbtStream}: blocks are counted per palette entry as they are read, so
+ * memory only grows with the palette, never with the number of blocks. Litematica stores each
+ * region's block states as a packed long array whose bit width depends on the palette size, and the
+ * palette may come after the array, so those files are read twice: once for the palettes and sizes,
+ * once to decode the arrays. Runs on the indexer thread.
+ */
+public final class SchematicImporter {
+
+    private static final Set<String> IGNORED_BLOCKS = Set.of("minecraft:air", "minecraft:cave_air", "minecraft:void_air", "minecraft:structure_void");
+
+    private SchematicImporter() {
+    }
+
+    /**
+     * Reads a schematic and returns the item counts, in the order the blocks first appear in its palette.
+     *
+     * @throws IOException if the file cannot be read or is not a supported format
+     */
+    public static Map<Item, Integer> read(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".litematic")) return readLitematic(file);
+        if (name.endsWith(".nbt")) return readStructure(file);
+        throw new IOException("Unsupported file type: " + file.getFileName());
+    }
+
+    /**
+     * A palette entry with the block state properties that change how many items it takes.
+     */
+    private record PaletteEntry(String block, Map<String, String> properties) {}
+
+    // === Vanilla structure files ===
+
+    private static Map<Item, Integer> readStructure(Path file) throws IOException {
+        List<PaletteEntry> palette = null;
+        long[] counts = new long[0];
+
+        try (NbtStream nbt = new NbtStream(Files.newInputStream(file))) {
+            expectRootCompound(nbt);
+            int type;
+            while ((type = nbt.nextType()) != NbtStream.END) {
+                String key = nbt.name();
+                if (key.equals("palette") && type == NbtStream.LIST) {
+                    palette = readPalette(nbt);
+                } else if (key.equals("palettes") && type == NbtStream.LIST) {
+                    // Structures with random variants, e.g. shipwrecks; the first variant is counted
+                    int elementType = nbt.readListType();
+                    int length = nbt.readLength();
+                    for (int i = 0; i < length; i++) {
+                        if (i == 0 && elementType == NbtStream.LIST) palette = readPalette(nbt);
+                        else nbt.skip(elementType);
+                    }
+                } else if (key.equals("blocks") && type == NbtStream.LIST) {
+                    counts = countStructureBlocks(nbt, counts);
+                } else {
+                    nbt.skip(type);
+                }
+            }
+        }
+        if (palette == null) throw new IOException("No block palette in " + file.getFileName());
+        return toItems(palette, counts);
+    }
+
+    private static long[] countStructureBlocks(NbtStream nbt, long[] counts) throws IOException {
+        int elementType = nbt.readListType();
+        int length = nbt.readLength();
+        for (int i = 0; i < length; i++) {
+            if (elementType != NbtStream.COMPOUND) {
+                nbt.skip(elementType);
+                continue;
+            }
+            int type;
+            while ((type = nbt.nextType()) != NbtStream.END) {
+                String key = nbt.name();
+                if (key.equals("state") && type == NbtStream.INT) {
+                    int state = nbt.readInt();
+                    if (state < 0) continue;
+                    if (state >= counts.length) counts = Arrays.copyOf(counts, Math.max(state + 1, counts.length * 2));
+                    counts[state]++;
+                } else {
+                    // Positions and block entity data, e.g. chest contents, are not needed
+                    nbt.skip(type);
+                }
+            }
+        }
+        return counts;
+    }
+
+    // === Litematica schematics ===
+
+    private static final class Region {
+        List<PaletteEntry> palette = List.of();
+        long volume;
+    }
+
+    private static Map<Item, Integer> readLitematic(Path file) throws IOException {
+        Map<String, Region> regions = new LinkedHashMap<>();
+        try (NbtStream nbt = new NbtStream(Files.newInputStream(file))) {
+            forEachRegion(nbt, (name, stream) -> regions.put(name, readRegionLayout(stream)));
+        }
+
+        Map<Item, Integer> result = new LinkedHashMap<>();
+        try (NbtStream nbt = new NbtStream(Files.newInputStream(file))) {
+            forEachRegion(nbt, (name, stream) -> {
+                Region layout = regions.get(name);
+                long[] counts = countRegionBlocks(stream, layout);
+                if (layout == null) return;
+                toItems(layout.palette, counts).forEach((item, count) -> result.merge(item, count, SchematicImporter::addCapped));
+            });
+        }
+        return result;
+    }
+
+    private interface RegionVisitor {
+        /**
+         * Called with the stream positioned inside a region's compound; must read it up to its end.
+         */
+        void visit(String name, NbtStream nbt) throws IOException;
+    }
+
+    private static void forEachRegion(NbtStream nbt, RegionVisitor visitor) throws IOException {
+        expectRootCompound(nbt);
+        int type;
+        while ((type = nbt.nextType()) != NbtStream.END) {
+            String key = nbt.name();
+            if (!key.equals("Regions") || type != NbtStream.COMPOUND) {
+                nbt.skip(type);
+                continue;
+            }
+            int regionType;
+            while ((regionType = nbt.nextType()) != NbtStream.END) {
+                String regionName = nbt.name();
+                if (regionType == NbtStream.COMPOUND) visitor.visit(regionName, nbt);
+                else nbt.skip(regionType);
+            }
+        }
+    }
+
+    private static Region readRegionLayout(NbtStream nbt) throws IOException {
+        Region region = new Region();
+        int type;
+        while ((type = nbt.nextType()) != NbtStream.END) {
+            String key = nbt.name();
+            if (key.equals("BlockStatePalette") && type == NbtStream.LIST) {
+                region.palette = readPalette(nbt);
+            } else if (key.equals("Size") && type == NbtStream.COMPOUND) {
+                long volume = 1;
+                int sizeType;
+                while ((sizeType = nbt.nextType()) != NbtStream.END) {
+                    nbt.name();
+                    // Sizes are negative when the region extends in the negative direction
+                    volume *= Math.abs((long) nbt.readNumber(sizeType));
+                }
+                region.volume = volume;
+            } else {
+                nbt.skip(type);
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Decodes a region's block states straight from the stream. Values are packed back to back,
+     * lowest bits first, and may span two longs.
+     */
+    private static long[] countRegionBlocks(NbtStream nbt, Region layout) throws IOException {
+        long[] counts = new long[layout == null ? 0 : layout.palette.size()];
+        int type;
+        while ((type = nbt.nextType()) != NbtStream.END) {
+            String key = nbt.name();
+            if (!key.equals("BlockStates") || type != NbtStream.LONG_ARRAY || layout == null || counts.length == 0) {
+                nbt.skip(type);
+                continue;
+            }
+
+            int length = nbt.readLength();
+            int bits = Math.max(2, 32 - Integer.numberOfLeadingZeros(counts.length - 1));
+            long mask = (1L << bits) - 1;
+            long entries = Math.min(layout.volume, (long) length * 64 / bits);
+            long buffer = 0;
+            int available = 0;
+            int read = 0;
+            for (long i = 0; i < entries; i++) {
+                int value;
+                if (available >= bits) {
+                    value = (int) (buffer & mask);
+                    buffer >>>= bits;
+                    available -= bits;
+                } else {
+                    long next = nbt.readLong();
+                    read++;
+                    value = (int) ((buffer | (next << available)) & mask);
+                    buffer = next >>> (bits - available);
+                    available = 64 - (bits - available);
+                }
+                if (value < counts.length) counts[value]++;
+            }
+            for (; read < length; read++) {
+                nbt.readLong();
+            }
+        }
+        return counts;
+    }
+
+    // === Shared ===
+
+    private static void expectRootCompound(NbtStream nbt) throws IOException {
+        if (nbt.nextType() != NbtStream.COMPOUND) throw new IOException("Not an NBT file");
+        nbt.name();
+    }
+
+    private static List<PaletteEntry> readPalette(NbtStream nbt) throws IOException {
+        int elementType = nbt.readListType();
+        int length = nbt.readLength();
+        List<PaletteEntry> palette = new ArrayList<>(Math.min(length, 4096));
+        for (int i = 0; i < length; i++) {
+            if (elementType != NbtStream.COMPOUND) {
+                nbt.skip(elementType);
+                continue;
+            }
+            String block = "minecraft:air";
+            Map<String, String> properties = Map.of();
+            int type;
+            while ((type = nbt.nextType()) != NbtStream.END) {
+                String key = nbt.name();
+                if (key.equals("Name") && type == NbtStream.STRING) {
+                    block = nbt.readString();
+                } else if (key.equals("Properties") && type == NbtStream.COMPOUND) {
+                    properties = readProperties(nbt);
+                } else {
+                    nbt.skip(type);
+                }
+            }
+            palette.add(new PaletteEntry(block, properties));
+        }
+        return palette;
+    }
+
+    private static Map<String, String> readProperties(NbtStream nbt) throws IOException {
+        Map<String, String> properties = new HashMap<>();
+        int type;
+        while ((type = nbt.nextType()) != NbtStream.END) {
+            String key = nbt.name();
+            if (type == NbtStream.STRING) properties.put(key, nbt.readString());
+            else nbt.skip(type);
+        }
+        return properties;
+    }
+
+    private static Map<Item, Integer> toItems(List<PaletteEntry> palette, long[] counts) {
+        Map<Item, Integer> items = new LinkedHashMap<>();
+        for (int state = 0; state < Math.min(palette.size(), counts.length); state++) {
+            if (counts[state] == 0) continue;
+            PaletteEntry entry = palette.get(state);
+            if (IGNORED_BLOCKS.contains(entry.block())) continue;
+            ResourceLocation id = ResourceLocation.tryParse(entry.block());
+            if (id == null) continue;
+            Optional<Block> block = BuiltInRegistries.BLOCK.getOptional(id);
+            if (block.isEmpty()) continue;
+            // Blocks without an item, e.g. fluids, fire or piston heads, cannot be crafted
+            Item item = block.get().asItem();
+            if (item == Items.AIR) continue;
+            long perBlock = itemsPerBlock(entry.properties());
+            if (perBlock == 0) continue;
+            items.merge(item, (int) Math.min(Integer.MAX_VALUE, counts[state] * perBlock), SchematicImporter::addCapped);
+        }
+        return items;
+    }
+
+    /**
+     * How many items one placed block state takes. The second half of a two-block structure (doors,
+     * tall plants, beds) is free, a double slab takes two slabs, and stackable blocks take one item per
+     * candle, pickle, egg or snow layer.
+     */
+    private static long itemsPerBlock(Map<String, String> properties) {
+        if ("upper".equals(properties.get("half")) || "head".equals(properties.get("part"))) return 0;
+        if ("double".equals(properties.get("type"))) return 2;
+        for (String stacked : new String[]{"candles", "pickles", "eggs", "layers"}) {
+            String value = properties.get(stacked);
+            if (value != null) {
+                try {
+                    return Math.max(1, Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static int addCapped(int a, int b) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) a + b);
+    }
+}
@@ -0,0 +1,297 @@
+package dev.hmdain.client.logic;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ServerData;
+import net.minecraft.client.server.IntegratedServer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.component.DataComponents;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.ChestMenu;
+import net.minecraft.world.inventory.ShulkerBoxMenu;
+import net.minecraft.world.inventory.Slot;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.component.ItemContainerContents;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.ChestBlock;
+import net.minecraft.world.level.block.entity.BarrelBlockEntity;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.entity.ChestBlockEntity;
+import net.minecraft.world.level.block.entity.ShulkerBoxBlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.properties.ChestType;
+import net.minecraft.world.level.storage.LevelResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Client-side record of what the player's storage containers held when they were last opened.
+ * <p>
+ * Every container keeps its own contribution, and the totals over all containers are maintained
+ * incrementally: recording a container only applies the difference to what it held before. The
+ * index is stored per world by a {@link Writer}, which keeps its own copy of the containers on the
+ * writing thread, so the client thread only hands over the container that changed. Only the client
+ * thread may use an instance. A container's contents are never modified once recorded, so they can
+ * be shared with the writer.
+ */
+public final class StorageIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("HowMuchDoIActuallyNeed");
+    private static final Path STORAGE_DIR = FabricLoader.getInstance().getConfigDir().resolve("how-much-do-i-actually-need").resolve("storage");
+    private static final int MAGIC = 0x484D4453; // "HMDS"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<ContainerKey, Reference2IntMap<Item>> containers = new HashMap<>();
+    private final Reference2LongOpenHashMap<Item> totals = new Reference2LongOpenHashMap<>();
+
+    /**
+     * Identifies a container by dimension and block position. Double chests use the lower position of
+     * their two halves, so both halves map to the same key.
+     */
+    public record ContainerKey(String dimension, long pos) {
+
+        /**
+         * Returns the key of the storage container at {@code pos}, or null if there is none.
+         */
+        public static ContainerKey of(Level level, BlockPos pos) {
+            BlockEntity blockEntity = level.getBlockEntity(pos);
+            if (!(blockEntity instanceof ChestBlockEntity || blockEntity instanceof BarrelBlockEntity
+                || blockEntity instanceof ShulkerBoxBlockEntity)) {
+                return null;
+            }
+
+            long key = pos.asLong();
+            BlockState state = level.getBlockState(pos);
+            if (state.getBlock() instanceof ChestBlock && state.getValue(ChestBlock.TYPE) != ChestType.SINGLE) {
+                key = Math.min(key, pos.relative(ChestBlock.getConnectedDirection(state)).asLong());
+            }
+            return new ContainerKey(level.dimension().location().toString(), key);
+        }
+    }
+
+    /**
+     * Whether a menu shows one of the containers {@link ContainerKey#of} accepts: chests and barrels
+     * use a {@link ChestMenu}, shulker boxes a {@link ShulkerBoxMenu}.
+     */
+    public static boolean isStorageMenu(AbstractContainerMenu menu) {
+        return menu instanceof ChestMenu || menu instanceof ShulkerBoxMenu;
+    }
+
+    /**
+     * Counts the items of a container menu, excluding the player's inventory. Items inside shulker
+     * boxes are counted as well.
+     */
+    public static Reference2IntMap<Item> capture(AbstractContainerMenu menu, Inventory playerInventory) {
+        Reference2IntOpenHashMap<Item> contents = new Reference2IntOpenHashMap<>();
+        for (Slot slot : menu.slots) {
+            if (slot.container == playerInventory) continue;
+            ItemStack stack = slot.getItem();
+            if (stack.isEmpty()) continue;
+            contents.addTo(stack.getItem(), stack.getCount());
+
+            ItemContainerContents inner = stack.get(DataComponents.CONTAINER);
+            if (inner != null) {
+                for (ItemStack innerStack : inner.nonEmptyItems()) {
+                    contents.addTo(innerStack.getItem(), innerStack.getCount() * stack.getCount());
+                }
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Replaces what a container holds.
+     *
+     * @return the resulting change of the totals, per item
+     */
+    public Map<Item, Long> record(ContainerKey key, Reference2IntMap<Item> contents) {
+        Map<Item, Long> deltas = new HashMap<>();
+        Reference2IntMap<Item> previous = contents.isEmpty() ? containers.remove(key) : containers.put(key, contents);
+        if (previous != null) {
+            for (Reference2IntMap.Entry<Item> entry : previous.reference2IntEntrySet()) {
+                deltas.merge(entry.getKey(), (long) -entry.getIntValue(), Long::sum);
+            }
+        }
+        for (Reference2IntMap.Entry<Item> entry : contents.reference2IntEntrySet()) {
+            deltas.merge(entry.getKey(), (long) entry.getIntValue(), Long::sum);
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+
+        deltas.forEach((item, delta) -> {
+            if (totals.addTo(item, delta) + delta == 0) totals.removeLong(item);
+        });
+        return deltas;
+    }
+
+    /**
+     * Returns the summed contents of all containers. The map is live and must not be modified.
+     */
+    public Reference2LongMap<Item> totals() {
+        return totals;
+    }
+
+    public int containerCount() {
+        return containers.size();
+    }
+
+    /**
+     * Describes the current world, so each world gets its own storage file. Must be called on the client thread.
+     */
+    public static String worldId(Minecraft client) {
+        IntegratedServer server = client.getSingleplayerServer();
+        ServerData serverData = client.getCurrentServer();
+        String world;
+        if (server != null) {
+            world = "world:" + server.getWorldPath(LevelResource.ROOT).toAbsolutePath().normalize();
+        } else if (serverData != null) {
+            world = "server:" + serverData.ip;
+        } else {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(world.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates the writer that saves this index for a world. Call it on the thread that will use the
+     * writer, before the index is handed to the client thread.
+     */
+    public Writer writer(String worldId) {
+        return new Writer(worldId, new HashMap<>(containers));
+    }
+
+    /**
+     * Saves the storage of one world. Changes are applied per container and a burst of them ends up
+     * as one write. Only the writing thread may use an instance.
+     */
+    public static final class Writer {
+        private final String worldId;
+        private final Map<ContainerKey, Reference2IntMap<Item>> containers;
+        private boolean dirty;
+
+        private Writer(String worldId, Map<ContainerKey, Reference2IntMap<Item>> containers) {
+            this.worldId = worldId;
+            this.containers = containers;
+        }
+
+        /**
+         * Replaces what a container holds, like {@link StorageIndex#record}.
+         *
+         * @return true if this is the first change since the last {@link #flush()}, which the caller
+         *         then has to schedule
+         */
+        public boolean record(ContainerKey key, Reference2IntMap<Item> contents) {
+            if (contents.isEmpty()) {
+                containers.remove(key);
+            } else {
+                containers.put(key, contents);
+            }
+            boolean first = !dirty;
+            dirty = true;
+            return first;
+        }
+
+        /**
+         * Writes the storage with all changes recorded so far.
+         */
+        public void flush() {
+            if (!dirty) return;
+            dirty = false;
+            write(worldId, serialize(containers));
+        }
+    }
+
+    private static byte[] serialize(Map<ContainerKey, Reference2IntMap<Item>> containers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(containers.size());
+            for (Map.Entry<ContainerKey, Reference2IntMap<Item>> container : containers.entrySet()) {
+                out.writeUTF(container.getKey().dimension());
+                out.writeLong(container.getKey().pos());
+                out.writeInt(container.getValue().size());
+                for (Reference2IntMap.Entry<Item> entry : container.getValue().reference2IntEntrySet()) {
+                    out.writeUTF(BuiltInRegistries.ITEM.getKey(entry.getKey()).toString());
+                    out.writeInt(entry.getIntValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes serialized storage for a world, replacing the previous file atomically. Safe to call off-thread.
+     */
+    public static void write(String worldId, byte[] data) {
+        Path path = STORAGE_DIR.resolve(worldId + ".bin");
+        Path temp = STORAGE_DIR.resolve(worldId + ".tmp");
+        try {
+            Files.createDirectories(STORAGE_DIR);
+            Files.write(temp, data);
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to save storage index {}", worldId, e);
+        }
+    }
+
+    /**
+     * Reads the storage of a world. Returns an empty index if there is none or it cannot be read.
+     * Safe to call off-thread; the result is handed to the client thread afterwards.
+     */
+    public static StorageIndex read(String worldId) {
+        StorageIndex index = new StorageIndex();
+        Path path = STORAGE_DIR.resolve(worldId + ".bin");
+        if (!Files.isRegularFile(path)) return index;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return index;
+            int containerCount = in.readInt();
+            for (int c = 0; c < containerCount; c++) {
+                ContainerKey key = new ContainerKey(in.readUTF(), in.readLong());
+                int entries = in.readInt();
+                Reference2IntOpenHashMap<Item> contents = new Reference2IntOpenHashMap<>(entries);
+                for (int e = 0; e < entries; e++) {
+                    ResourceLocation id = ResourceLocation.tryParse(in.readUTF());
+                    int count = in.readInt();
+                    // Items of removed mods are dropped
+                    if (id != null) {
+                        BuiltInRegistries.ITEM.getOptional(id).ifPresent(item -> contents.addTo(item, count));
+                    }
+                }
+                index.record(key, contents);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Discarding unreadable storage index {}", worldId, e);
+            return new StorageIndex();
+        }
+        return index;
+    }
+}
@@ -1,51 +1,82 @@
 package dev.hmdain.client.ui;
 
+import dev.hmdain.client.debug.PerfStats;
 import dev.hmdain.client.logic.ClientState;
+import dev.hmdain.client.logic.CraftingPlan;
+import dev.hmdain.client.logic.ItemSearchIndex;
+import dev.hmdain.client.logic.ProjectStore;
+import dev.hmdain.client.logic.Material;
+import dev.hmdain.client.logic.ResultChange;
+import dev.hmdain.client.logic.ResultListener;
+import dev.hmdain.client.logic.ResultSnapshot;
 import io.wispforest.owo.ui.base.BaseOwoScreen;
+import io.wispforest.owo.ui.component.ButtonComponent;
 import io.wispforest.owo.ui.component.Components;
+import io.wispforest.owo.ui.component.LabelComponent;
 import io.wispforest.owo.ui.component.TextBoxComponent;
 import io.wispforest.owo.ui.container.Containers;
 import io.wispforest.owo.ui.container.FlowLayout;
 import io.wispforest.owo.ui.core.*;
 import net.minecraft.client.Minecraft;
-import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
-import net.minecraft.world.item.Items;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class HowMuchScreen extends BaseOwoScreen<FlowLayout> {
 
     private final ClientState state = ClientState.getInstance();
-    private FlowLayout itemGridContainer;
+    private ItemGridComponent itemGrid;
     private FlowLayout targetListContainer;
     private FlowLayout resultListContainer;
     private TextBoxComponent searchField;
+    private long shownResultVersion = -1;
+    // Version the result rows reflect, or -1 if they have to be rebuilt from the snapshot
+    private long resultRowsVersion = -1;
+    private final Map<Item, TargetRow> targetRows = new HashMap<>();
+    private final Map<Material, ResultRow> resultRows = new HashMap<>();
+    // The result rows in the order they are shown, followed by the total
+    private final List<ResultRow> orderedRows = new ArrayList<>();
+    private final ResultListener resultListener = this::onResultsChanged;
+    private LabelComponent totalLabel;
+    private long shownTotal;
+    private LabelComponent resultTitle;
+    private ButtonComponent projectBtn;
+    private String shownProject;
+    private boolean showPlan;
     
-    private static final int ITEM_SIZE = 16;
-    private static final int MAX_ITEMS = 150;
+    // Largest first; ties by id so equal counts keep a stable order
+    private static final Comparator<Map.Entry<Material, Long>> RESULT_ORDER =
+        Map.Entry.<Material, Long>comparingByValue().reversed()
+            .thenComparing(entry -> entry.getKey().id());
+    private static final Comparator<ResultRow> ROW_ORDER =
+        Comparator.<ResultRow>comparingLong(row -> row.count).reversed()
+            .thenComparing(row -> row.material.id());
 
     @Override
     protected @NotNull OwoUIAdapter<FlowLayout> createAdapter() {
         return OwoUIAdapter.create(this, Containers::verticalFlow);
     }
-    
-    private int getGridColumns() {
-        var mc = Minecraft.getInstance();
-        int screenWidth = mc.getWindow().getGuiScaledWidth();
-        // Calculate based on left panel width (40% of 80% of screen)
-        int panelWidth = (int)(screenWidth * 0.32) - 16;
-        return Math.max(3, Math.min(9, panelWidth / (ITEM_SIZE + 3)));
-    }
 
     @Override
     protected void build(FlowLayout rootComponent) {
         var mc = Minecraft.getInstance();
         int screenHeight = mc.getWindow().getGuiScaledHeight();
+        // Built again on resize, with new containers
+        targetRows.clear();
+        resultRows.clear();
+        orderedRows.clear();
+        shownResultVersion = -1;
+        resultRowsVersion = -1;
+        state.removeResultListener(resultListener);
+        state.addResultListener(resultListener);
         
         rootComponent
             .surface(Surface.VANILLA_TRANSLUCENT)
@@ -70,6 +101,13 @@ public class HowMuchScreen extends BaseOwoScreen<FlowLayout> {
                 .color(Color.ofRgb(0x55FFFF))
                 .shadow(true)
         );
+        
+        // Adds every block of a structure or schematic file to the targets
+        var importBtn = Components.button(Component.literal("Import"), btn -> SchematicFileDialog.open(state::importSchematic));
+        importBtn.sizing(Sizing.fixed(36), Sizing.fixed(12));
+        importBtn.margins(Insets.left(8));
+        importBtn.tooltip(Component.literal("Import the blocks of a structure (.nbt) or Litematica (.litematic) file"));
+        header.child(importBtn);
         mainPanel.child(header);
 
         // Main content area
@@ -88,28 +126,63 @@ public class HowMuchScreen extends BaseOwoScreen<FlowLayout> {
         searchField.onChanged().subscribe(this::onSearchChanged);
         leftPanel.child(searchField);
 
-        // Item grid
-        var itemGridScroll = Containers.verticalScroll(
-            Sizing.fill(100), 
-            Sizing.fill(100),
-            Containers.verticalFlow(Sizing.content(), Sizing.content())
-        );
-        itemGridScroll.surface(Surface.PANEL_INSET);
-        itemGridScroll.padding(Insets.of(2));
+        // Item grid - only the visible rows are drawn, so it can hold every search result
+        var itemGridFrame = Containers.verticalFlow(Sizing.fill(100), Sizing.fill(100));
+        itemGridFrame.surface(Surface.PANEL_INSET);
+        itemGridFrame.padding(Insets.of(2));
         
-        itemGridContainer = (FlowLayout) itemGridScroll.child();
-        itemGridContainer.gap(1);
-        itemGridContainer.horizontalAlignment(HorizontalAlignment.LEFT);
+        itemGrid = new ItemGridComponent((item, button) -> addTarget(item, button == 1 ? 64 : 1));
+        itemGridFrame.child(itemGrid);
         
         populateItemGrid("");
-        leftPanel.child(itemGridScroll);
+        leftPanel.child(itemGridFrame);
 
         // === RIGHT: Targets & Results ===
         var rightPanel = Containers.verticalFlow(Sizing.fill(60), Sizing.fill(100));
         rightPanel.gap(3);
 
+        // Projects - each world keeps its own named target lists
+        var projectRow = Containers.horizontalFlow(Sizing.fill(100), Sizing.content());
+        projectRow.verticalAlignment(VerticalAlignment.CENTER);
+        projectRow.gap(2);
+        
+        projectBtn = Components.button(projectLabel(), btn -> {
+            List<String> names = state.getProjectNames();
+            int next = (names.indexOf(state.getProjectName()) + 1) % names.size();
+            state.selectProject(names.get(next));
+            btn.setMessage(projectLabel());
+        });
+        projectBtn.sizing(Sizing.fixed(70), Sizing.fixed(12));
+        projectBtn.tooltip(Component.literal("Switch to the next project"));
+        projectRow.child(projectBtn);
+        
+        var projectNameField = Components.textBox(Sizing.fixed(60));
+        projectNameField.setMaxLength(ProjectStore.MAX_NAME_LENGTH);
+        projectNameField.text("");
+        projectRow.child(projectNameField);
+        
+        var newProjectBtn = Components.button(Component.literal("New"), btn -> {
+            state.createProject(projectNameField.getValue());
+            projectNameField.text("");
+            projectBtn.setMessage(projectLabel());
+            updateUI();
+        });
+        newProjectBtn.sizing(Sizing.fixed(26), Sizing.fixed(12));
+        newProjectBtn.tooltip(Component.literal("Create a project with the entered name"));
+        projectRow.child(newProjectBtn);
+        
+        var deleteProjectBtn = Components.button(Component.literal("Del"), btn -> {
+            state.deleteProject();
+            projectBtn.setMessage(projectLabel());
+            updateUI();
+        });
+        deleteProjectBtn.sizing(Sizing.fixed(24), Sizing.fixed(12));
+        deleteProjectBtn.tooltip(Component.literal("Delete this project (the default project is only cleared)"));
+        projectRow.child(deleteProjectBtn);
+        rightPanel.child(projectRow);
+
         // Targets section
-        var targetSection = Containers.verticalFlow(Sizing.fill(100), Sizing.fill(35));
+        var targetSection = Containers.verticalFlow(Sizing.fill(100), Sizing.fill(30));
         targetSection.surface(Surface.DARK_PANEL);
         targetSection.padding(Insets.of(4));
         targetSection.gap(2);
@@ -122,13 +195,32 @@ public class HowMuchScreen extends BaseOwoScreen<FlowLayout> {
         );
         
         var clearBtn = Components.button(Component.literal("Clear"), btn -> {
-            state.getTargets().clear();
-            state.recalculate();
+            state.clearTargets();
             updateUI();
         });
         clearBtn.sizing(Sizing.fixed(32), Sizing.fixed(12));
         clearBtn.margins(Insets.left(4));
         targetHeader.child(clearBtn);
+        
+        // Gross requirements, or only what the inventory does not cover yet
+        var inventoryBtn = Components.button(inventoryModeLabel(), btn -> {
+            state.setSubtractInventory(!state.isSubtractInventory());
+            btn.setMessage(inventoryModeLabel());
+        });
+        inventoryBtn.sizing(Sizing.fixed(44), Sizing.fixed(12));
+        inventoryBtn.margins(Insets.left(2));
+        inventoryBtn.tooltip(Component.literal("Subtract the items in your inventory"));
+        targetHeader.child(inventoryBtn);
+        
+        var storageBtn = Components.button(storageModeLabel(), btn -> {
+            state.setSubtractStorage(!state.isSubtractStorage());
+            btn.setMessage(storageModeLabel());
+        });
+        storageBtn.sizing(Sizing.fixed(48), Sizing.fixed(12));
+        storageBtn.margins(Insets.left(2));
+        storageBtn.tooltip(Component.literal("Subtract the items in chests, barrels and shulker boxes you have opened ("
+            + state.getStorage().containerCount() + " recorded)"));
+        targetHeader.child(storageBtn);
         targetSection.child(targetHeader);
 
         var targetScroll = Containers.verticalScroll(
@@ -144,15 +236,33 @@ public class HowMuchScreen extends BaseOwoScreen<FlowLayout> {
         rightPanel.child(targetSection);
 
         // Results section
-        var resultSection = Containers.verticalFlow(Sizing.fill(100), Sizing.fill(65));
+        var resultSection = Containers.verticalFlow(Sizing.fill(100), Sizing.fill(58));
         resultSection.surface(Surface.DARK_PANEL);
         resultSection.padding(Insets.of(4));
         resultSection.gap(2);
         
-        resultSection.child(
-            Components.label(Component.literal("Base Materials"))
-                .color(Color.ofRgb(0xFFAA00))
-        );
+        var resultHeader = Containers.horizontalFlow(Sizing.fill(100), Sizing.fixed(12));
+        resultHeader.verticalAlignment(VerticalAlignment.CENTER);
+        resultTitle = Components.label(resultTitleText());
+        resultTitle.color(Color.ofRgb(0xFFAA00));
+        resultHeader.child(resultTitle);
+        
+        // Base materials, or the crafts that turn them into the targets
+        var planBtn = Components.button(Component.literal("Plan"), btn -> {
+            showPlan = !showPlan;
+            resultTitle.text(resultTitleText());
+            btn.setMessage(Component.literal(showPlan ? "Totals" : "Plan"));
+            resultRows.clear();
+            orderedRows.clear();
+            resultListContainer.clearChildren();
+            resultRowsVersion = -1;
+            refreshResults();
+        });
+        planBtn.sizing(Sizing.fixed(36), Sizing.fixed(12));
+        planBtn.margins(Insets.left(4));
+        planBtn.tooltip(Component.literal("Show the crafting steps, ingredients first"));
+        resultHeader.child(planBtn);
+        resultSection.child(resultHeader);
 
         var resultScroll = Containers.verticalScroll(
             Sizing.fill(100), 
@@ -174,200 +284,392 @@ public class HowMuchScreen extends BaseOwoScreen<FlowLayout> {
         updateUI();
     }
     
-    private void onSearchChanged(String search) {
-        populateItemGrid(search);
+    @Override
+    public void removed() {
+        state.removeResultListener(resultListener);
+        super.removed();
     }
     
-    private void populateItemGrid(String search) {
-        itemGridContainer.clearChildren();
-        
-        String lowerSearch = search.toLowerCase().trim();
-        List<Item> matchingItems = new ArrayList<>();
-        
-        BuiltInRegistries.ITEM.stream()
-            .filter(item -> item != Items.AIR)
-            .filter(item -> {
-                if (lowerSearch.isEmpty()) return true;
-                String name = item.getDefaultInstance().getHoverName().getString().toLowerCase();
-                return name.contains(lowerSearch);
-            })
-            .limit(MAX_ITEMS)
-            .forEach(matchingItems::add);
-        
-        int cols = getGridColumns();
-        FlowLayout currentRow = null;
-        int itemsInRow = 0;
-        
-        for (Item item : matchingItems) {
-            if (currentRow == null || itemsInRow >= cols) {
-                currentRow = Containers.horizontalFlow(Sizing.content(), Sizing.content());
-                currentRow.gap(1);
-                itemGridContainer.child(currentRow);
-                itemsInRow = 0;
-            }
-            
-            var itemBtn = createItemButton(item);
-            currentRow.child(itemBtn);
-            itemsInRow++;
+    @Override
+    public void tick() {
+        super.tick();
+        // Result rows follow the change events; the targets and the plan are refreshed per version
+        if (resultListContainer != null && state.getSnapshot().version() != shownResultVersion) {
+            // Switching projects replaces the targets as well; they arrive together with their results
+            updateUI();
         }
-        
-        if (matchingItems.isEmpty()) {
-            itemGridContainer.child(
-                Components.label(Component.literal("No items"))
-                    .color(Color.ofRgb(0x666666))
-                    .margins(Insets.of(4))
-            );
+        if (projectBtn != null && !state.getProjectName().equals(shownProject)) {
+            projectBtn.setMessage(projectLabel());
         }
     }
     
-    private FlowLayout createItemButton(Item item) {
-        var btn = Containers.verticalFlow(Sizing.fixed(ITEM_SIZE + 2), Sizing.fixed(ITEM_SIZE + 2));
-        btn.horizontalAlignment(HorizontalAlignment.CENTER);
-        btn.verticalAlignment(VerticalAlignment.CENTER);
-        btn.surface(Surface.PANEL);
-        btn.cursorStyle(CursorStyle.HAND);
-        
-        var itemComp = Components.item(item.getDefaultInstance());
-        btn.child(itemComp);
-        
-        btn.mouseDown().subscribe((mouseX, mouseY, button) -> {
-            if (button == 0) {
-                addTarget(item, 1);
-                return true;
-            } else if (button == 1) {
-                addTarget(item, 64);
-                return true;
-            }
-            return false;
-        });
-        
-        btn.tooltip(item.getDefaultInstance().getHoverName());
-        return btn;
+    private void onSearchChanged(String search) {
+        populateItemGrid(search);
+    }
+    
+    private void populateItemGrid(String search) {
+        ItemSearchIndex index = state.getSearchIndex();
+        long start = System.nanoTime();
+        List<Item> matches = index.search(search, Integer.MAX_VALUE);
+        PerfStats.searched(search, start, matches.size());
+        itemGrid.setItems(matches);
     }
 
     private void addTarget(Item item, int amount) {
-        for (int i = 0; i < amount; i++) {
-            state.addTarget(item);
-        }
+        state.addTarget(item, amount);
         updateUI();
     }
 
-    private void removeTarget(ItemStack stack) {
-        state.removeTarget(stack);
+    private void removeTarget(Item item) {
+        state.removeTarget(item);
         updateUI();
     }
     
-    private void adjustTargetCount(ItemStack stack, int delta) {
-        int newCount = stack.getCount() + delta;
-        if (newCount <= 0) {
-            state.removeTarget(stack);
-        } else {
-            stack.setCount(newCount);
-            state.recalculate();
-        }
+    private void adjustTargetCount(Item item, int delta) {
+        state.addTarget(item, delta);
         updateUI();
     }
 
     private void updateUI() {
+        long start = System.nanoTime();
         updateTargetList();
-        updateResultList();
+        if (state.getSnapshot().version() != shownResultVersion) {
+            refreshResults();
+        }
+        PerfStats.uiRebuilt(start);
     }
     
-    private void updateTargetList() {
-        targetListContainer.clearChildren();
-        
-        if (state.getTargets().isEmpty()) {
-            targetListContainer.child(
-                Components.label(Component.literal("Click items to add"))
-                    .color(Color.ofRgb(0x666666))
-            );
+    private void refreshResults() {
+        shownResultVersion = state.getSnapshot().version();
+        if (showPlan) {
+            requestPlan();
+        } else if (resultRowsVersion < 0) {
+            updateResultList();
+        }
+    }
+    
+    /**
+     * Applies a change event to the result rows: only the rows of changed materials are touched, and
+     * each is moved to its new place in the sorted order. Events the rows already reflect are skipped.
+     */
+    private void onResultsChanged(ResultSnapshot snapshot, ResultChange change) {
+        if (showPlan || resultListContainer == null || resultRowsVersion < 0 || change.version() <= resultRowsVersion) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (snapshot.results().isEmpty() || resultRows.isEmpty()) {
+            // The placeholder comes or goes
+            updateResultList();
+            PerfStats.uiRebuilt(start);
             return;
         }
         
-        for (ItemStack stack : state.getTargets()) {
-            var row = Containers.horizontalFlow(Sizing.fill(100), Sizing.fixed(16));
-            row.verticalAlignment(VerticalAlignment.CENTER);
-            row.gap(2);
-            
-            row.child(Components.item(stack));
-            
-            String name = stack.getHoverName().getString();
-            if (name.length() > 12) name = name.substring(0, 11) + "..";
-            row.child(
-                Components.label(Component.literal(name))
-                    .color(Color.WHITE)
-                    .sizing(Sizing.fill(100), Sizing.content())
-            );
+        long total = shownTotal;
+        for (ResultChange.Entry entry : change.entries()) {
+            Material material = entry.material();
+            total += entry.newCount() - entry.oldCount();
             
-            var minusBtn = Components.button(Component.literal("-"), btn -> adjustTargetCount(stack, -1));
-            minusBtn.sizing(Sizing.fixed(12), Sizing.fixed(12));
-            row.child(minusBtn);
-            
-            var countLabel = Components.label(Component.literal(String.valueOf(stack.getCount())));
-            countLabel.color(Color.ofRgb(0xFFFF55));
-            countLabel.sizing(Sizing.fixed(20), Sizing.content());
-            row.child(countLabel);
-            
-            var plusBtn = Components.button(Component.literal("+"), btn -> adjustTargetCount(stack, 1));
-            plusBtn.sizing(Sizing.fixed(12), Sizing.fixed(12));
-            row.child(plusBtn);
+            ResultRow row = resultRows.get(material);
+            if (row != null) {
+                orderedRows.remove(row);
+                resultListContainer.removeChild(row.row);
+            }
+            if (entry.isRemoved()) {
+                resultRows.remove(material);
+                continue;
+            }
+            if (row == null) {
+                row = createResultRow(material);
+                resultRows.put(material, row);
+            }
+            setResultCount(row, entry.newCount());
             
-            var xBtn = Components.button(Component.literal("x"), btn -> removeTarget(stack));
-            xBtn.sizing(Sizing.fixed(12), Sizing.fixed(12));
-            row.child(xBtn);
+            int index = Collections.binarySearch(orderedRows, row, ROW_ORDER);
+            index = index < 0 ? -index - 1 : index;
+            orderedRows.add(index, row);
+            resultListContainer.child(index, row.row);
+        }
+        resultRowsVersion = change.version();
+        setTotal(total);
+        PerfStats.uiRebuilt(start);
+    }
+    
+    /**
+     * Reconciles the target rows with the current targets. Rows are keyed by item: existing rows only
+     * get a new count label when their count changed, rows are only created or removed when the set of
+     * targets changes, and a row is only moved when its position among the targets changed.
+     */
+    private void updateTargetList() {
+        var targets = state.getTargets();
+        
+        if (targets.isEmpty()) {
+            if (!targetRows.isEmpty() || targetListContainer.children().isEmpty()) {
+                targetRows.clear();
+                targetListContainer.clearChildren();
+                targetListContainer.child(
+                    Components.label(Component.literal("Click items to add"))
+                        .color(Color.ofRgb(0x666666))
+                );
+            }
+            return;
+        }
+        if (targetRows.isEmpty()) {
+            // Drop the placeholder
+            targetListContainer.clearChildren();
+        }
+        
+        var iterator = targetRows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (state.getTargetCount(entry.getKey()) == 0) {
+                targetListContainer.removeChild(entry.getValue().row);
+                iterator.remove();
+            }
+        }
+        
+        int i = 0;
+        for (ItemStack stack : targets) {
+            TargetRow row = targetRows.get(stack.getItem());
+            if (row == null) {
+                row = createTargetRow(stack);
+                targetRows.put(stack.getItem(), row);
+            } else if (row.count != stack.getCount()) {
+                row.count = stack.getCount();
+                row.countLabel.text(Component.literal(String.valueOf(row.count)));
+            }
             
-            targetListContainer.child(row);
+            var children = targetListContainer.children();
+            if (i >= children.size() || children.get(i) != row.row) {
+                targetListContainer.removeChild(row.row);
+                targetListContainer.child(i, row.row);
+            }
+            i++;
         }
     }
     
-    private void updateResultList() {
-        resultListContainer.clearChildren();
+    private TargetRow createTargetRow(ItemStack stack) {
+        Item item = stack.getItem();
+        var row = Containers.horizontalFlow(Sizing.fill(100), Sizing.fixed(16));
+        row.verticalAlignment(VerticalAlignment.CENTER);
+        row.gap(2);
+        
+        row.child(Components.item(stack.copyWithCount(1)));
+        
+        String name = stack.getHoverName().getString();
+        if (name.length() > 12) name = name.substring(0, 11) + "..";
+        row.child(
+            Components.label(Component.literal(name))
+                .color(Color.WHITE)
+                .sizing(Sizing.fill(100), Sizing.content())
+        );
+        
+        var minusBtn = Components.button(Component.literal("-"), btn -> adjustTargetCount(item, -1));
+        minusBtn.sizing(Sizing.fixed(12), Sizing.fixed(12));
+        row.child(minusBtn);
+        
+        var countLabel = Components.label(Component.literal(String.valueOf(stack.getCount())));
+        countLabel.color(Color.ofRgb(0xFFFF55));
+        countLabel.sizing(Sizing.fixed(20), Sizing.content());
+        row.child(countLabel);
+        
+        var plusBtn = Components.button(Component.literal("+"), btn -> adjustTargetCount(item, 1));
+        plusBtn.sizing(Sizing.fixed(12), Sizing.fixed(12));
+        row.child(plusBtn);
         
-        var results = state.getResults();
+        var xBtn = Components.button(Component.literal("x"), btn -> removeTarget(item));
+        xBtn.sizing(Sizing.fixed(12), Sizing.fixed(12));
+        row.child(xBtn);
+        
+        return new TargetRow(row, countLabel, stack.getCount());
+    }
+    
+    /**
+     * Reconciles the result rows with the latest snapshot, keyed by material. Only rows whose count
+     * changed get a new label, and a row is only moved when its position in the sorted order changed.
+     * Used when the rows are first shown; after that they follow {@link #onResultsChanged}.
+     */
+    private void updateResultList() {
+        var snapshot = state.getSnapshot();
+        resultRowsVersion = snapshot.version();
+        var results = snapshot.results();
         
         if (results.isEmpty()) {
+            orderedRows.clear();
+            // Targets whose needs are all covered by stock leave nothing to gather
+            String placeholder = state.getTargets().isEmpty() ? "Add targets first" : "Nothing to craft";
+            var children = resultListContainer.children();
+            if (!resultRows.isEmpty() || children.size() != 1
+                || !(children.get(0) instanceof LabelComponent label && label.text().getString().equals(placeholder))) {
+                resultRows.clear();
+                resultListContainer.clearChildren();
+                resultListContainer.child(
+                    Components.label(Component.literal(placeholder))
+                        .color(Color.ofRgb(0x666666))
+                );
+            }
+            return;
+        }
+        if (resultRows.isEmpty()) {
+            // Drop the placeholder and add the total, which always stays last
+            resultListContainer.clearChildren();
+            totalLabel = Components.label(Component.empty());
+            totalLabel.color(Color.ofRgb(0xAAAAAA)).margins(Insets.top(3));
+            shownTotal = -1;
+            resultListContainer.child(totalLabel);
+        }
+        
+        var iterator = resultRows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (!results.containsKey(entry.getKey())) {
+                resultListContainer.removeChild(entry.getValue().row);
+                iterator.remove();
+            }
+        }
+        
+        List<Map.Entry<Material, Long>> sorted = new ArrayList<>(results.entrySet());
+        sorted.sort(RESULT_ORDER);
+        orderedRows.clear();
+        
+        long total = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            Material material = sorted.get(i).getKey();
+            long count = sorted.get(i).getValue();
+            total += count;
+            
+            ResultRow row = resultRows.get(material);
+            if (row == null) {
+                row = createResultRow(material);
+                resultRows.put(material, row);
+            }
+            setResultCount(row, count);
+            orderedRows.add(row);
+            
+            var children = resultListContainer.children();
+            if (i >= children.size() || children.get(i) != row.row) {
+                resultListContainer.removeChild(row.row);
+                resultListContainer.child(i, row.row);
+            }
+        }
+        setTotal(total);
+    }
+    
+    private void setResultCount(ResultRow row, long count) {
+        if (row.count != count) {
+            row.count = count;
+            int color = count > 1000 ? 0xFF5555 : (count > 100 ? 0xFFAA00 : 0x55FF55);
+            row.countLabel.text(Component.literal(formatCount(count) + "x")).color(Color.ofRgb(color));
+        }
+    }
+    
+    private void setTotal(long total) {
+        if (total != shownTotal) {
+            shownTotal = total;
+            totalLabel.text(Component.literal("Total: " + formatCount(total)));
+        }
+    }
+    
+    /**
+     * Asks for the plan of the current results. It is built on the solver thread and only shown if
+     * it still matches what is displayed once it arrives.
+     */
+    private void requestPlan() {
+        long version = state.getSnapshot().version();
+        shownResultVersion = version;
+        state.requestPlan().thenAcceptAsync(plan -> {
+            if (showPlan && shownResultVersion == version && plan != null && plan.version() == version) {
+                long start = System.nanoTime();
+                showPlan(plan);
+                PerfStats.uiRebuilt(start);
+            }
+        }, Minecraft.getInstance());
+    }
+    
+    private void showPlan(CraftingPlan plan) {
+        resultListContainer.clearChildren();
+        if (plan.steps().isEmpty()) {
             resultListContainer.child(
-                Components.label(Component.literal("Add targets first"))
+                Components.label(Component.literal(state.getTargets().isEmpty() ? "Add targets first" : "Nothing to craft"))
                     .color(Color.ofRgb(0x666666))
             );
             return;
         }
+        for (CraftingPlan.Step step : plan.steps()) {
+            resultListContainer.child(createPlanRow(step));
+        }
+    }
+    
+    private FlowLayout createPlanRow(CraftingPlan.Step step) {
+        var row = Containers.horizontalFlow(Sizing.fill(100), Sizing.fixed(14));
+        row.verticalAlignment(VerticalAlignment.CENTER);
+        row.gap(3);
         
-        results.entrySet().stream()
-            .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
-            .forEach(entry -> {
-                var item = entry.getKey();
-                var count = entry.getValue();
-                
-                var row = Containers.horizontalFlow(Sizing.fill(100), Sizing.fixed(14));
-                row.verticalAlignment(VerticalAlignment.CENTER);
-                row.gap(3);
-                
-                row.child(Components.item(item.getDefaultInstance()));
-                
-                int color = count > 1000 ? 0xFF5555 : (count > 100 ? 0xFFAA00 : 0x55FF55);
-                row.child(
-                    Components.label(Component.literal(formatCount(count) + "x"))
-                        .color(Color.ofRgb(color))
-                        .sizing(Sizing.fixed(36), Sizing.content())
-                );
-                
-                String name = item.getDefaultInstance().getHoverName().getString();
-                if (name.length() > 14) name = name.substring(0, 13) + "..";
-                row.child(
-                    Components.label(Component.literal(name))
-                        .color(Color.WHITE)
-                );
-                
-                resultListContainer.child(row);
-            });
-        
-        long total = results.values().stream().mapToLong(Long::longValue).sum();
-        resultListContainer.child(
-            Components.label(Component.literal("Total: " + formatCount(total)))
-                .color(Color.ofRgb(0xAAAAAA))
-                .margins(Insets.top(3))
+        row.child(Components.item(step.material().displayStack()));
+        row.child(
+            Components.label(Component.literal(formatCount(step.crafts()) + "x"))
+                .color(Color.ofRgb(0x55FFFF))
+                .sizing(Sizing.fixed(36), Sizing.content())
+        );
+        
+        String name = step.material().displayName().getString();
+        if (name.length() > 14) name = name.substring(0, 13) + "..";
+        row.child(
+            Components.label(Component.literal(name))
+                .color(Color.WHITE)
+        );
+        if (step.surplus() > 0) {
+            row.child(
+                Components.label(Component.literal("+" + formatCount(step.surplus())))
+                    .color(Color.ofRgb(0x888888))
+            );
+        }
+        
+        List<Component> tooltip = new ArrayList<>();
+        tooltip.add(Component.literal("Makes " + step.produced() + ", " + step.surplus() + " left over"));
+        for (CraftingPlan.Ingredient ingredient : step.ingredients()) {
+            tooltip.add(Component.literal(ingredient.count() + "x " + ingredient.material().displayName().getString()));
+        }
+        row.tooltip(tooltip);
+        return row;
+    }
+    
+    private ResultRow createResultRow(Material material) {
+        var row = Containers.horizontalFlow(Sizing.fill(100), Sizing.fixed(14));
+        row.verticalAlignment(VerticalAlignment.CENTER);
+        row.gap(3);
+        
+        row.child(Components.item(material.displayStack()));
+        
+        var countLabel = Components.label(Component.empty());
+        countLabel.sizing(Sizing.fixed(36), Sizing.content());
+        row.child(countLabel);
+        
+        String name = material.displayName().getString();
+        if (name.length() > 14) name = name.substring(0, 13) + "..";
+        row.child(
+            Components.label(Component.literal(name))
+                .color(Color.WHITE)
         );
+        
+        return new ResultRow(material, row, countLabel);
+    }
+    
+    private Component projectLabel() {
+        shownProject = state.getProjectName();
+        String name = shownProject.length() > 11 ? shownProject.substring(0, 10) + ".." : shownProject;
+        return Component.literal(name);
+    }
+    
+    private Component resultTitleText() {
+        return Component.literal(showPlan ? "Crafting Plan" : "Base Materials");
+    }
+    
+    private Component inventoryModeLabel() {
+        return Component.literal(state.isSubtractInventory() ? "Missing" : "Total");
+    }
+    
+    private Component storageModeLabel() {
+        return Component.literal(state.isSubtractStorage() ? "Chests: On" : "Chests: Off");
     }
     
     private String formatCount(long count) {
@@ -375,4 +677,29 @@ public class HowMuchScreen extends BaseOwoScreen<FlowLayout> {
         if (count >= 1000) return String.format("%.1fK", count / 1000.0);
         return String.valueOf(count);
     }
+    
+    private static final class TargetRow {
+        final FlowLayout row;
+        final LabelComponent countLabel;
+        int count;
+        
+        TargetRow(FlowLayout row, LabelComponent countLabel, int count) {
+            this.row = row;
+            this.countLabel = countLabel;
+            this.count = count;
+        }
+    }
+    
+    private static final class ResultRow {
+        final Material material;
+        final FlowLayout row;
+        final LabelComponent countLabel;
+        long count = -1;
+        
+        ResultRow(Material material, FlowLayout row, LabelComponent countLabel) {
+            this.material = material;
+            this.row = row;
+            this.countLabel = countLabel;
+        }
+    }
 }
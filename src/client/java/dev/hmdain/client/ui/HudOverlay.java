@@ -1,31 +1,70 @@
 package dev.hmdain.client.ui;
 
 import dev.hmdain.client.config.ModConfig;
+import dev.hmdain.client.debug.PerfStats;
 import dev.hmdain.client.logic.ClientState;
+import dev.hmdain.client.logic.Material;
+import dev.hmdain.client.logic.ResultChange;
+import dev.hmdain.client.logic.ResultListener;
+import dev.hmdain.client.logic.ResultSnapshot;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.DeltaTracker;
 import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.locale.Language;
 import net.minecraft.network.chat.Component;
-import net.minecraft.world.item.Item;
+import net.minecraft.util.FormattedCharSequence;
 import net.minecraft.world.item.ItemStack;
 
 import java.util.Map;
 
-public class HudOverlay implements HudRenderCallback {
+/**
+ * Draws the largest material counts in the top-left corner.
+ * <p>
+ * The lines are prepared once per result change: the top {@code maxHudLines} entries are selected
+ * with a bounded insertion (no full sort), and their stacks and text are cached. They are only
+ * prepared again when {@link ClientState} reports a change of the results, or the line limit or the
+ * language changes, so ordinary frames and solves that change nothing just draw what is already there.
+ */
+public class HudOverlay implements HudRenderCallback, ResultListener {
+
+    private static final Component HEADER = Component.literal("Materials Needed:");
+    private static final Component REMAINING_HEADER = Component.literal("Still Missing:");
+
+    private ItemStack[] stacks = new ItemStack[0];
+    private FormattedCharSequence[] lines = new FormattedCharSequence[0];
+    private int lineCount;
+    private boolean stale = true;
+    private int preparedMaxLines = -1;
+    private Language preparedLanguage;
 
     @Override
     public void onHudRender(GuiGraphics context, DeltaTracker tickCounter) {
+        long start = System.nanoTime();
+        if (draw(context)) {
+            PerfStats.hudFrame(start);
+        }
+    }
+
+    /**
+     * Draws the overlay. Returns false if there was nothing to draw.
+     */
+    private boolean draw(GuiGraphics context) {
         ClientState state = ClientState.getInstance();
         ModConfig config = ModConfig.get();
-        
-        if (!config.hudEnabled || state.getResults().isEmpty()) {
-            return;
+        ResultSnapshot snapshot = state.getSnapshot();
+
+        if (!config.hudEnabled || snapshot.results().isEmpty()) {
+            return false;
         }
 
         Minecraft client = Minecraft.getInstance();
         if (client.gui.getDebugOverlay().showDebugScreen() || client.screen != null) {
-            return; 
+            return false;
+        }
+
+        if (stale || config.maxHudLines != preparedMaxLines || Language.getInstance() != preparedLanguage) {
+            prepare(snapshot, config.maxHudLines);
         }
 
         int x = 10;
@@ -33,27 +72,64 @@ public class HudOverlay implements HudRenderCallback {
         int lineHeight = 16;
 
         // Draw header
-        context.drawString(client.font, Component.literal("Materials Needed:"), x, y, 0xFFFFFF);
+        context.drawString(client.font, state.isSubtractingStock() ? REMAINING_HEADER : HEADER, x, y, 0xFFFFFF);
         y += lineHeight;
 
-        var results = state.getResults();
-        int maxLines = config.maxHudLines;
-        int currentLine = 0;
-
-        for (Map.Entry<Item, Long> entry : results.entrySet()) {
-            if (currentLine >= maxLines) break;
-
-            Item item = entry.getKey();
-            Long count = entry.getValue();
-            ItemStack stack = item.getDefaultInstance();
-            
-            context.renderItem(stack, x, y);
-            
-            String text = count + "x " + stack.getHoverName().getString();
-            context.drawString(client.font, text, x + 18, y + 4, 0xFFFFFF);
-            
+        for (int i = 0; i < lineCount; i++) {
+            context.renderItem(stacks[i], x, y);
+            context.drawString(client.font, lines[i], x + 18, y + 4, 0xFFFFFF);
             y += lineHeight;
-            currentLine++;
         }
+        return true;
+    }
+
+    /**
+     * Selects the largest {@code maxLines} results, ordered by count and then id so the order does not
+     * depend on hash iteration, and caches what is needed to draw them. Returns the number of lines.
+     */
+    int prepare(ResultSnapshot snapshot, int maxLines) {
+        int limit = Math.max(0, maxLines);
+        Material[] top = new Material[limit];
+        long[] counts = new long[limit];
+        int size = 0;
+
+        for (Map.Entry<Material, Long> entry : snapshot.results().entrySet()) {
+            Material material = entry.getKey();
+            long count = entry.getValue();
+            if (size == limit && (limit == 0 || !ranksBefore(count, material, counts[size - 1], top[size - 1]))) {
+                continue;
+            }
+            int position = size < limit ? size++ : size - 1;
+            while (position > 0 && ranksBefore(count, material, counts[position - 1], top[position - 1])) {
+                top[position] = top[position - 1];
+                counts[position] = counts[position - 1];
+                position--;
+            }
+            top[position] = material;
+            counts[position] = count;
+        }
+
+        if (stacks.length < size) {
+            stacks = new ItemStack[size];
+            lines = new FormattedCharSequence[size];
+        }
+        for (int i = 0; i < size; i++) {
+            stacks[i] = top[i].displayStack();
+            lines[i] = Component.literal(counts[i] + "x " + top[i].displayName().getString()).getVisualOrderText();
+        }
+        lineCount = size;
+        stale = false;
+        preparedMaxLines = maxLines;
+        preparedLanguage = Language.getInstance();
+        return size;
+    }
+
+    @Override
+    public void onResultsChanged(ResultSnapshot snapshot, ResultChange change) {
+        stale = true;
+    }
+
+    private static boolean ranksBefore(long count, Material material, long otherCount, Material other) {
+        return count != otherCount ? count > otherCount : material.id().compareTo(other.id()) < 0;
     }
 }
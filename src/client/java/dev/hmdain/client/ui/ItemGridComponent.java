@@ -0,0 +1,157 @@
+package dev.hmdain.client.ui;
+
+import io.wispforest.owo.ui.base.BaseComponent;
+import io.wispforest.owo.ui.core.CursorStyle;
+import io.wispforest.owo.ui.core.OwoUIDrawContext;
+import io.wispforest.owo.ui.core.Sizing;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.chat.Component;
+import net.minecraft.util.Mth;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Virtualized item grid. Holds the full list of items but only draws the rows that are currently
+ * visible, so the whole registry can be browsed without one widget per item.
+ * <p>
+ * Cells are not components; each frame draws the visible window directly. The stacks of the visible
+ * cells are kept in a small pool and only replaced when a cell shows a different item, so scrolling
+ * and idle frames do not allocate.
+ */
+public class ItemGridComponent extends BaseComponent {
+
+    private static final int CELL_SIZE = 18;
+    private static final int GAP = 1;
+    private static final int PITCH = CELL_SIZE + GAP;
+    private static final int SCROLLBAR_WIDTH = 2;
+
+    private final ObjIntConsumer<Item> onClick;
+    private List<Item> items = List.of();
+    private ItemStack[] cellStacks = new ItemStack[0];
+    private int firstRow;
+    private int hoveredIndex = -1;
+
+    /**
+     * @param onClick called with the clicked item and the mouse button
+     */
+    public ItemGridComponent(ObjIntConsumer<Item> onClick) {
+        this.onClick = onClick;
+        this.sizing(Sizing.fill(100), Sizing.fill(100));
+        this.cursorStyle(CursorStyle.HAND);
+    }
+
+    /**
+     * Replaces the shown items and scrolls back to the top. The list is kept, not copied.
+     */
+    public void setItems(List<Item> items) {
+        this.items = items;
+        this.firstRow = 0;
+        this.hoveredIndex = -1;
+    }
+
+    private int columns() {
+        return Math.max(1, (width - SCROLLBAR_WIDTH - GAP) / PITCH);
+    }
+
+    private int visibleRows() {
+        return Math.max(1, height / PITCH);
+    }
+
+    private int totalRows() {
+        return (items.size() + columns() - 1) / columns();
+    }
+
+    private int maxFirstRow() {
+        return Math.max(0, totalRows() - visibleRows());
+    }
+
+    /**
+     * Returns the index of the item under the given position relative to this component, or -1.
+     */
+    private int indexAt(double localX, double localY) {
+        if (localX < 0 || localY < 0) return -1;
+        int column = (int) localX / PITCH;
+        int row = (int) localY / PITCH;
+        if (column >= columns() || row >= visibleRows()) return -1;
+        if ((int) localX % PITCH >= CELL_SIZE || (int) localY % PITCH >= CELL_SIZE) return -1;
+        int index = (firstRow + row) * columns() + column;
+        return index < items.size() ? index : -1;
+    }
+
+    @Override
+    public void draw(OwoUIDrawContext context, int mouseX, int mouseY, float partialTicks, float delta) {
+        var font = Minecraft.getInstance().font;
+        if (items.isEmpty()) {
+            context.drawString(font, Component.literal("No items"), x + 4, y + 4, 0x666666, false);
+            hoveredIndex = -1;
+            return;
+        }
+
+        firstRow = Mth.clamp(firstRow, 0, maxFirstRow());
+        int columns = columns();
+        int rows = visibleRows();
+        if (cellStacks.length < columns * rows) {
+            cellStacks = new ItemStack[columns * rows];
+        }
+
+        hoveredIndex = isInBoundingBox(mouseX, mouseY) ? indexAt(mouseX - x, mouseY - y) : -1;
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int index = (firstRow + row) * columns + column;
+                if (index >= items.size()) break;
+
+                int cell = row * columns + column;
+                Item item = items.get(index);
+                if (cellStacks[cell] == null || cellStacks[cell].getItem() != item) {
+                    cellStacks[cell] = item.getDefaultInstance();
+                }
+
+                int cellX = x + column * PITCH;
+                int cellY = y + row * PITCH;
+                context.fill(cellX, cellY, cellX + CELL_SIZE, cellY + CELL_SIZE, index == hoveredIndex ? 0xFF6F6F6F : 0xFF3A3A3A);
+                context.renderItem(cellStacks[cell], cellX + 1, cellY + 1);
+            }
+        }
+
+        int totalRows = totalRows();
+        if (totalRows > rows) {
+            int trackX = x + width - SCROLLBAR_WIDTH;
+            int thumbHeight = Math.max(8, height * rows / totalRows);
+            int thumbY = y + (height - thumbHeight) * firstRow / maxFirstRow();
+            context.fill(trackX, y, trackX + SCROLLBAR_WIDTH, y + height, 0xFF202020);
+            context.fill(trackX, thumbY, trackX + SCROLLBAR_WIDTH, thumbY + thumbHeight, 0xFFA0A0A0);
+        }
+    }
+
+    @Override
+    public boolean shouldDrawTooltip(double mouseX, double mouseY) {
+        return hoveredIndex >= 0 && isInBoundingBox(mouseX, mouseY);
+    }
+
+    @Override
+    public void drawTooltip(OwoUIDrawContext context, int mouseX, int mouseY, float partialTicks, float delta) {
+        if (!shouldDrawTooltip(mouseX, mouseY) || hoveredIndex >= items.size()) return;
+        context.renderTooltip(Minecraft.getInstance().font, items.get(hoveredIndex).getDefaultInstance(), mouseX, mouseY);
+    }
+
+    @Override
+    public boolean onMouseDown(double mouseX, double mouseY, int button) {
+        int index = indexAt(mouseX, mouseY);
+        if (index >= 0 && (button == 0 || button == 1)) {
+            onClick.accept(items.get(index), button);
+            return true;
+        }
+        return super.onMouseDown(mouseX, mouseY, button);
+    }
+
+    @Override
+    public boolean onMouseScroll(double mouseX, double mouseY, double amount) {
+        int previous = firstRow;
+        firstRow = Mth.clamp(firstRow - (int) Math.signum(amount), 0, maxFirstRow());
+        return firstRow != previous || super.onMouseScroll(mouseX, mouseY, amount);
+    }
+}
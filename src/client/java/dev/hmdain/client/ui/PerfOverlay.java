@@ -0,0 +1,51 @@
+package dev.hmdain.client.ui;
+
+import dev.hmdain.client.config.ModConfig;
+import dev.hmdain.client.debug.PerfStats;
+import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
+import net.minecraft.client.DeltaTracker;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.Font;
+import net.minecraft.client.gui.GuiGraphics;
+
+import java.util.List;
+
+/**
+ * Debug overlay with the mod's {@link PerfStats}, drawn in the top-right corner when enabled in the
+ * config. The text is only refreshed twice a second, so the overlay does not skew the numbers it shows.
+ */
+public class PerfOverlay implements HudRenderCallback {
+
+    private static final long REFRESH_NANOS = 500_000_000L;
+
+    private List<String> lines = List.of();
+    private int width;
+    private long refreshedAt;
+
+    @Override
+    public void onHudRender(GuiGraphics context, DeltaTracker tickCounter) {
+        if (!ModConfig.get().perfOverlay) {
+            return;
+        }
+
+        Minecraft client = Minecraft.getInstance();
+        Font font = client.font;
+        long now = System.nanoTime();
+        if (lines.isEmpty() || now - refreshedAt >= REFRESH_NANOS) {
+            refreshedAt = now;
+            lines = PerfStats.lines();
+            width = 0;
+            for (String line : lines) {
+                width = Math.max(width, font.width(line));
+            }
+        }
+
+        int x = context.guiWidth() - width - 4;
+        int y = 4;
+        context.fill(x - 2, y - 2, x + width + 2, y + lines.size() * (font.lineHeight + 1) + 1, 0x90000000);
+        for (String line : lines) {
+            context.drawString(font, line, x, y, 0xE0E0E0);
+            y += font.lineHeight + 1;
+        }
+    }
+}
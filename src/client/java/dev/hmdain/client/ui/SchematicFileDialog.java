@@ -0,0 +1,51 @@
+package dev.hmdain.client.ui;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.client.Minecraft;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.tinyfd.TinyFileDialogs;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Native file picker for structure and schematic files. The dialog blocks until it is closed, so it
+ * runs on its own thread and the game keeps rendering meanwhile.
+ */
+final class SchematicFileDialog {
+
+    private SchematicFileDialog() {
+    }
+
+    /**
+     * Opens the dialog; {@code onChosen} runs on the client thread if a file was picked.
+     */
+    static void open(Consumer<Path> onChosen) {
+        Thread thread = new Thread(() -> {
+            String chosen;
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                PointerBuffer filters = stack.mallocPointer(2);
+                filters.put(stack.UTF8("*.nbt"));
+                filters.put(stack.UTF8("*.litematic"));
+                filters.flip();
+                chosen = TinyFileDialogs.tinyfd_openFileDialog("Import Schematic", startDirectory(), filters, "Structures and schematics", false);
+            }
+            if (chosen != null) {
+                Path file = Path.of(chosen);
+                Minecraft.getInstance().execute(() -> onChosen.accept(file));
+            }
+        }, "HowMuch File Dialog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Litematica keeps its schematics in the game directory's "schematics" folder
+    private static String startDirectory() {
+        Path gameDir = FabricLoader.getInstance().getGameDir();
+        Path schematics = gameDir.resolve("schematics");
+        return (Files.isDirectory(schematics) ? schematics : gameDir).toAbsolutePath() + File.separator;
+    }
+}
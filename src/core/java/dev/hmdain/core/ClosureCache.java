@@ -0,0 +1,147 @@
+package dev.hmdain.core;
+
+import java.util.Arrays;
+
+/**
+ * Bounded LRU cache of each node's resolved expansion: the topological ranks of every node that
+ * has to be visited to break it down into base materials, sorted ascending.
+ * <p>
+ * Rounding happens at every intermediate, so per-item material vectors cannot simply be scaled and
+ * summed without over-counting shared intermediates. What is reusable is the traversal: merging the
+ * cached closures of all targets yields exactly the nodes a solve has to sweep, in order.
+ * <p>
+ * Node ids are dense, so entries live in an array indexed by id, and the recency order is a linked
+ * list threaded through two more id-indexed arrays. Nothing is boxed on lookup.
+ */
+public final class ClosureCache {
+
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private int[][] closures = new int[0][];
+    // Recency order by node id, most recently used first
+    private int[] newer = new int[0];
+    private int[] older = new int[0];
+    private int newest = NONE;
+    private int oldest = NONE;
+    private int entries;
+    private RecipeGraph graph;
+    private int[] visitStamp = new int[0];
+    private int[] stack = new int[0];
+    private int[] buffer = new int[0];
+    private int stamp;
+    private long hits;
+    private long misses;
+
+    public ClosureCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Returns the sorted ranks of all nodes reachable from {@code id}, including itself.
+     * The returned array is shared and must not be modified.
+     */
+    public int[] closureOf(RecipeGraph graph, int id) {
+        if (graph != this.graph) {
+            reset(graph);
+        }
+
+        int[] closure = closures[id];
+        if (closure != null) {
+            hits++;
+            if (id != newest) {
+                unlink(id);
+                linkNewest(id);
+            }
+            return closure;
+        }
+
+        misses++;
+        closure = compute(graph, id);
+        if (entries == capacity) {
+            int evicted = oldest;
+            unlink(evicted);
+            closures[evicted] = null;
+            entries--;
+        }
+        closures[id] = closure;
+        linkNewest(id);
+        entries++;
+        return closure;
+    }
+
+    public void clear() {
+        reset(null);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private void reset(RecipeGraph graph) {
+        int size = graph == null ? 0 : graph.size();
+        this.graph = graph;
+        closures = new int[size][];
+        newer = new int[size];
+        older = new int[size];
+        newest = NONE;
+        oldest = NONE;
+        entries = 0;
+    }
+
+    private void linkNewest(int id) {
+        newer[id] = NONE;
+        older[id] = newest;
+        if (newest != NONE) newer[newest] = id;
+        newest = id;
+        if (oldest == NONE) oldest = id;
+    }
+
+    private void unlink(int id) {
+        int before = newer[id];
+        int after = older[id];
+        if (before != NONE) older[before] = after; else newest = after;
+        if (after != NONE) newer[after] = before; else oldest = before;
+    }
+
+    private int[] compute(RecipeGraph graph, int root) {
+        int size = graph.size();
+        if (visitStamp.length != size) {
+            visitStamp = new int[size];
+            stack = new int[size];
+            buffer = new int[size];
+            stamp = 0;
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visitStamp, 0);
+            stamp = 1;
+        }
+
+        int count = 0;
+        int depth = 0;
+        visitStamp[root] = stamp;
+        buffer[count++] = graph.rankOf(root);
+        stack[depth++] = root;
+
+        while (depth > 0) {
+            int node = stack[--depth];
+            if (!graph.isExpandable(node)) continue;
+            for (int edge = graph.ingredientStart(node); edge < graph.ingredientEnd(node); edge++) {
+                int child = graph.ingredientId(edge);
+                if (visitStamp[child] != stamp) {
+                    visitStamp[child] = stamp;
+                    buffer[count++] = graph.rankOf(child);
+                    stack[depth++] = child;
+                }
+            }
+        }
+
+        int[] closure = Arrays.copyOf(buffer, count);
+        Arrays.sort(closure);
+        return closure;
+    }
+}
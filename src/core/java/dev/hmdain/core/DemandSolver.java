@@ -0,0 +1,481 @@
+package dev.hmdain.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Incremental demand solver over a {@link RecipeGraph}.
+ * <p>
+ * The total demand and the number of crafts of every node are kept between calls, so a change to
+ * one target only re-sweeps that target's closure. Crafts are always recomputed from the node's
+ * total demand, which keeps rounding at shared intermediates exact no matter how the demand
+ * arrived there.
+ * <p>
+ * Nodes can also hold stock, items that are already available. Stock is subtracted from a node's
+ * total demand before its crafts are computed, so stocked intermediates are not expanded further.
+ * Stock survives {@link #reset()}.
+ * <p>
+ * Large sweeps can run on a {@link ForkJoinPool}, see {@link #sweep(BooleanSupplier, ForkJoinPool)}.
+ */
+public final class DemandSolver {
+
+    private final RecipeGraph graph;
+    private final ClosureCache closures;
+    private final long[] demand;
+    private final long[] crafts;
+    private final long[] pending;
+    private final long[] stock;
+    private final boolean[] restocked;
+    private final long[] marks;
+    private final int[] changedBases;
+    private int changedCount;
+    private int expandedCount;
+    // Built on the first parallel sweep
+    private int[] levelOrder;
+    private int[] levelStarts;
+    private int[] levelWork;
+    private Worker[] workers = new Worker[0];
+
+    /**
+     * Levels with fewer pending nodes than this are processed on the calling thread; splitting them
+     * costs more than the nodes themselves.
+     */
+    public static final int PARALLEL_LEVEL_THRESHOLD = 512;
+    private static final int MIN_CHUNK = 128;
+    // Below this many nodes, merging cached closures is cheaper than a pass over the whole graph
+    private static final int BULK_MARK_THRESHOLD = 32;
+
+    public DemandSolver(RecipeGraph graph, ClosureCache closures) {
+        this.graph = graph;
+        this.closures = closures;
+        this.demand = new long[graph.size()];
+        this.crafts = new long[graph.size()];
+        this.pending = new long[graph.size()];
+        this.stock = new long[graph.size()];
+        this.restocked = new boolean[graph.size()];
+        this.marks = new long[(graph.size() + 63) >>> 6];
+        this.changedBases = new int[graph.size()];
+    }
+
+    public RecipeGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Drops all demand, as if no target had ever been added.
+     */
+    public void reset() {
+        Arrays.fill(demand, 0);
+        Arrays.fill(crafts, 0);
+        Arrays.fill(pending, 0);
+        Arrays.fill(marks, 0);
+        changedCount = 0;
+    }
+
+    /**
+     * Queues a change of external demand on a node. Nothing is propagated until {@link #sweep()}.
+     */
+    public void addDemand(int id, long delta) {
+        if (delta == 0) return;
+        pending[id] += delta;
+        for (int rank : closures.closureOf(graph, id)) {
+            marks[rank >>> 6] |= 1L << rank;
+        }
+    }
+
+    /**
+     * Queues demand on many nodes at once, e.g. all targets of a full solve. Instead of merging every
+     * node's closure, which costs the sum of the closure sizes, the affected nodes are marked in one
+     * pass over the topological order, which costs O(V + E) however much the closures overlap. Few
+     * nodes still go through their cached closures.
+     *
+     * @param count how many entries of {@code ids} and {@code deltas} to use
+     */
+    public void addDemands(int[] ids, long[] deltas, int count) {
+        if (count < BULK_MARK_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                addDemand(ids[i], deltas[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (deltas[i] == 0) continue;
+            pending[ids[i]] += deltas[i];
+            int rank = graph.rankOf(ids[i]);
+            marks[rank >>> 6] |= 1L << rank;
+        }
+        spreadMarks();
+    }
+
+    /**
+     * Queues stock changes of many nodes at once, e.g. everything held when a new graph is solved for
+     * the first time. Marks like {@link #addDemands}.
+     */
+    public void addStocks(int[] ids, long[] deltas, int count) {
+        if (count < BULK_MARK_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                addStock(ids[i], deltas[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (deltas[i] == 0) continue;
+            stock[ids[i]] += deltas[i];
+            restocked[ids[i]] = true;
+            int rank = graph.rankOf(ids[i]);
+            marks[rank >>> 6] |= 1L << rank;
+        }
+        spreadMarks();
+    }
+
+    /**
+     * Extends the marks to everything the marked nodes expand into. Consumers come first in rank
+     * order, so one pass reaches every ingredient below them.
+     */
+    private void spreadMarks() {
+        for (int rank = 0; rank < graph.size(); rank++) {
+            if ((marks[rank >>> 6] & (1L << rank)) == 0) continue;
+            int id = graph.nodeAt(rank);
+            if (!graph.isExpandable(id)) continue;
+            for (int edge = graph.ingredientStart(id); edge < graph.ingredientEnd(id); edge++) {
+                int ingredient = graph.rankOf(graph.ingredientId(edge));
+                marks[ingredient >>> 6] |= 1L << ingredient;
+            }
+        }
+    }
+
+    /**
+     * Queues a change of the stock held of a node. Nothing is propagated until {@link #sweep()}.
+     */
+    public void addStock(int id, long delta) {
+        if (delta == 0) return;
+        stock[id] += delta;
+        restocked[id] = true;
+        for (int rank : closures.closureOf(graph, id)) {
+            marks[rank >>> 6] |= 1L << rank;
+        }
+    }
+
+    /**
+     * Propagates all queued demand and stock changes through the affected closures in topological order.
+     * Afterwards {@link #changedCount()} and {@link #changedBase(int)} list the base nodes whose
+     * demand or stock changed.
+     *
+     * @return the number of base nodes whose demand or stock changed
+     */
+    public int sweep() {
+        return sweep(() -> false);
+    }
+
+    /**
+     * Like {@link #sweep()}, but gives up as soon as {@code cancelled} returns true.
+     * A cancelled sweep leaves the solver inconsistent; it has to be {@link #reset()} before reuse.
+     *
+     * @return the number of base nodes whose demand or stock changed, or -1 if the sweep was cancelled
+     */
+    public int sweep(BooleanSupplier cancelled) {
+        changedCount = 0;
+        expandedCount = 0;
+        for (int word = 0; word < marks.length; word++) {
+            long bits = marks[word];
+            if (bits == 0) continue;
+            if (cancelled.getAsBoolean()) return -1;
+            marks[word] = 0;
+            while (bits != 0) {
+                int rank = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                processNode(graph.nodeAt(rank));
+            }
+        }
+        return changedCount;
+    }
+
+    /**
+     * Like {@link #sweep(BooleanSupplier)}, but spreads the work of large levels over {@code pool}.
+     * <p>
+     * Nodes are grouped by level, their longest distance from any consumer, so no node of a level is an
+     * ingredient of another node of the same level. A level's nodes are processed concurrently, each
+     * worker adding the demand it pushes to ingredients into its own accumulator. The accumulators are
+     * merged before the next level starts. Each node's crafts are still computed once from its full
+     * total demand, so the results are exactly those of the sequential sweep.
+     */
+    public int sweep(BooleanSupplier cancelled, ForkJoinPool pool) {
+        if (pool.getParallelism() < 2) {
+            return sweep(cancelled);
+        }
+        if (levelOrder == null) {
+            buildLevels();
+        }
+        changedCount = 0;
+        expandedCount = 0;
+        for (int level = 0; level + 1 < levelStarts.length; level++) {
+            if (cancelled.getAsBoolean()) return -1;
+
+            int work = 0;
+            for (int i = levelStarts[level]; i < levelStarts[level + 1]; i++) {
+                int rank = levelOrder[i];
+                long bit = 1L << rank;
+                if ((marks[rank >>> 6] & bit) == 0) continue;
+                marks[rank >>> 6] &= ~bit;
+                levelWork[work++] = graph.nodeAt(rank);
+            }
+
+            if (work < PARALLEL_LEVEL_THRESHOLD) {
+                for (int i = 0; i < work; i++) {
+                    processNode(levelWork[i]);
+                }
+            } else {
+                processLevel(work, pool);
+            }
+        }
+        return changedCount;
+    }
+
+    private void processLevel(int work, ForkJoinPool pool) {
+        int chunks = Math.max(1, Math.min(pool.getParallelism() * 4, work / MIN_CHUNK));
+        if (workers.length < chunks) {
+            workers = Arrays.copyOf(workers, chunks);
+        }
+        LevelChunk[] tasks = new LevelChunk[chunks];
+        for (int c = 0; c < chunks; c++) {
+            if (workers[c] == null) workers[c] = new Worker();
+            tasks[c] = new LevelChunk(workers[c], (int) ((long) work * c / chunks), (int) ((long) work * (c + 1) / chunks));
+        }
+        @SuppressWarnings("serial")
+        RecursiveAction level = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        };
+        pool.invoke(level);
+
+        // Merged in chunk order, so the changed bases come out in the same order every time
+        for (int c = 0; c < chunks; c++) {
+            Worker worker = workers[c];
+            for (int i = 0; i < worker.size; i++) {
+                pending[worker.ids[i]] += worker.deltas[i];
+            }
+            System.arraycopy(worker.bases, 0, changedBases, changedCount, worker.baseCount);
+            changedCount += worker.baseCount;
+            expandedCount += worker.expanded;
+            worker.clear();
+        }
+    }
+
+    /**
+     * Orders all ranks by level, ranks ascending within a level. A node's level is one more than the
+     * highest level of the nodes that consume it, so it is always processed after all of them.
+     */
+    private void buildLevels() {
+        int size = graph.size();
+        int[] levels = new int[size];
+        int levelCount = size == 0 ? 0 : 1;
+        for (int rank = 0; rank < size; rank++) {
+            int id = graph.nodeAt(rank);
+            // Base materials, including cut cycle members, never push demand along their edges
+            if (!graph.isExpandable(id)) continue;
+            for (int edge = graph.ingredientStart(id); edge < graph.ingredientEnd(id); edge++) {
+                int ingredient = graph.rankOf(graph.ingredientId(edge));
+                levels[ingredient] = Math.max(levels[ingredient], levels[rank] + 1);
+                levelCount = Math.max(levelCount, levels[ingredient] + 1);
+            }
+        }
+
+        int[] starts = new int[levelCount + 1];
+        for (int rank = 0; rank < size; rank++) {
+            starts[levels[rank] + 1]++;
+        }
+        for (int level = 0; level < levelCount; level++) {
+            starts[level + 1] += starts[level];
+        }
+        int[] order = new int[size];
+        int[] next = Arrays.copyOf(starts, levelCount);
+        for (int rank = 0; rank < size; rank++) {
+            order[next[levels[rank]]++] = rank;
+        }
+        levelOrder = order;
+        levelStarts = starts;
+        levelWork = new int[size];
+    }
+
+    private void processNode(int id) {
+        long delta = pending[id];
+        if (delta == 0 && !restocked[id]) return;
+        pending[id] = 0;
+        restocked[id] = false;
+        expandedCount++;
+        long total = demand[id] + delta;
+        demand[id] = total;
+
+        if (!graph.isExpandable(id)) {
+            changedBases[changedCount++] = id;
+            return;
+        }
+
+        int outputCount = graph.outputCount(id);
+        long net = Math.max(0, total - stock[id]);
+        long craftsNeeded = (net + outputCount - 1) / outputCount;
+        long craftDelta = craftsNeeded - crafts[id];
+        if (craftDelta == 0) return;
+        crafts[id] = craftsNeeded;
+
+        for (int edge = graph.ingredientStart(id); edge < graph.ingredientEnd(id); edge++) {
+            pending[graph.ingredientId(edge)] += craftDelta * graph.ingredientCount(edge);
+        }
+    }
+
+    /**
+     * Returns the number of nodes the last sweep had to process, for instrumentation.
+     */
+    public int expandedCount() {
+        return expandedCount;
+    }
+
+    /**
+     * Same as {@link #processNode(int)}, but everything that other nodes of the level could touch goes to
+     * the worker instead of the shared arrays.
+     */
+    private void processNode(int id, Worker worker) {
+        long delta = pending[id];
+        if (delta == 0 && !restocked[id]) return;
+        pending[id] = 0;
+        restocked[id] = false;
+        worker.expanded++;
+        long total = demand[id] + delta;
+        demand[id] = total;
+
+        if (!graph.isExpandable(id)) {
+            worker.addBase(id);
+            return;
+        }
+
+        int outputCount = graph.outputCount(id);
+        long net = Math.max(0, total - stock[id]);
+        long craftsNeeded = (net + outputCount - 1) / outputCount;
+        long craftDelta = craftsNeeded - crafts[id];
+        if (craftDelta == 0) return;
+        crafts[id] = craftsNeeded;
+
+        for (int edge = graph.ingredientStart(id); edge < graph.ingredientEnd(id); edge++) {
+            worker.push(graph.ingredientId(edge), craftDelta * graph.ingredientCount(edge));
+        }
+    }
+
+    // Fork/join tasks are never serialized
+    @SuppressWarnings("serial")
+    private final class LevelChunk extends RecursiveAction {
+        private final Worker worker;
+        private final int from;
+        private final int to;
+
+        LevelChunk(Worker worker, int from, int to) {
+            this.worker = worker;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = from; i < to; i++) {
+                processNode(levelWork[i], worker);
+            }
+        }
+    }
+
+    /**
+     * Per-chunk accumulator of demand pushed to ingredients and of changed base nodes. Kept between
+     * levels and sweeps so its arrays are only grown, never reallocated per level.
+     */
+    private static final class Worker {
+        int[] ids = new int[64];
+        long[] deltas = new long[64];
+        int size;
+        int[] bases = new int[16];
+        int baseCount;
+        int expanded;
+
+        void push(int id, long delta) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+            }
+            ids[size] = id;
+            deltas[size++] = delta;
+        }
+
+        void addBase(int id) {
+            if (baseCount == bases.length) {
+                bases = Arrays.copyOf(bases, baseCount * 2);
+            }
+            bases[baseCount++] = id;
+        }
+
+        void clear() {
+            size = 0;
+            baseCount = 0;
+            expanded = 0;
+        }
+    }
+
+    public int changedCount() {
+        return changedCount;
+    }
+
+    public int changedBase(int index) {
+        return changedBases[index];
+    }
+
+    /**
+     * Total demand on a node, from targets and from the recipes that consume it.
+     */
+    public long demandOf(int id) {
+        return demand[id];
+    }
+
+    /**
+     * Demand on a node that its stock does not cover.
+     */
+    public long remainingOf(int id) {
+        return Math.max(0, demand[id] - stock[id]);
+    }
+
+    public long stockOf(int id) {
+        return stock[id];
+    }
+
+    public long craftsOf(int id) {
+        return crafts[id];
+    }
+
+    /**
+     * Lists every node that has to be crafted, ingredients before the nodes that consume them, so the
+     * steps can be followed in order. Demand is already pooled per node, so each node appears once and
+     * its surplus is what is left after every consumer took its share.
+     */
+    public List<CraftStep> craftSteps() {
+        List<CraftStep> steps = new ArrayList<>();
+        for (int rank = graph.size() - 1; rank >= 0; rank--) {
+            int id = graph.nodeAt(rank);
+            if (crafts[id] == 0) continue;
+            long produced = crafts[id] * graph.outputCount(id);
+            steps.add(new CraftStep(id, crafts[id], produced, produced - remainingOf(id)));
+        }
+        return steps;
+    }
+
+    /**
+     * One step of a crafting plan.
+     *
+     * @param id       the node to craft
+     * @param crafts   how often its recipe is used
+     * @param produced the number of items made
+     * @param surplus  the items made beyond what is needed
+     */
+    public record CraftStep(int id, long crafts, long produced, long surplus) {}
+}
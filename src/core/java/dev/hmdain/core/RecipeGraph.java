@@ -0,0 +1,296 @@
+package dev.hmdain.core;
+
+import java.util.Arrays;
+
+/**
+ * Compiled, array-backed form of the recipe database.
+ * Nodes are dense int ids. The ingredients of node {@code id} are stored in compressed-sparse-row
+ * layout at {@code [offsets[id], offsets[id + 1])} of {@code ingredientIds} and {@code counts}.
+ * A node with an output count of 0 has no recipe and is a base material.
+ * <p>
+ * The graph also resolves recipe cycles and computes a topological order (every node before its
+ * ingredients) once when it is built, so solves never have to sort or guard against cycles themselves.
+ */
+public final class RecipeGraph {
+
+    private final int[] offsets;
+    private final int[] ingredientIds;
+    private final int[] counts;
+    private final int[] outputCounts;
+    private final boolean[] cycleCut;
+    private final int[] order;
+    private final int[] rank;
+
+    private RecipeGraph(int[] offsets, int[] ingredientIds, int[] counts, int[] outputCounts) {
+        this.offsets = offsets;
+        this.ingredientIds = ingredientIds;
+        this.counts = counts;
+        this.outputCounts = outputCounts;
+        this.cycleCut = new boolean[outputCounts.length];
+        this.order = new int[outputCounts.length];
+        this.rank = new int[outputCounts.length];
+        computeOrder();
+    }
+
+    /**
+     * Recreates a graph from its raw CSR arrays, e.g. when loading it back from disk.
+     * Cycle handling and the topological order are recomputed; both are linear.
+     */
+    public static RecipeGraph fromArrays(int[] offsets, int[] ingredientIds, int[] counts, int[] outputCounts) {
+        int size = outputCounts.length;
+        if (offsets.length != size + 1 || counts.length != ingredientIds.length || offsets[size] != ingredientIds.length) {
+            throw new IllegalArgumentException("Inconsistent recipe graph arrays");
+        }
+        for (int node = 0; node < size; node++) {
+            if (offsets[node] > offsets[node + 1]) {
+                throw new IllegalArgumentException("Offsets are not monotonic at node " + node);
+            }
+        }
+        for (int ingredient : ingredientIds) {
+            if (ingredient < 0 || ingredient >= size) {
+                throw new IllegalArgumentException("Ingredient id " + ingredient + " is outside the graph");
+            }
+        }
+        return new RecipeGraph(offsets, ingredientIds, counts, outputCounts);
+    }
+
+    public int size() {
+        return outputCounts.length;
+    }
+
+    public int edgeCount() {
+        return ingredientIds.length;
+    }
+
+    /**
+     * Whether the node should be broken down into its ingredients.
+     * False for base materials and for nodes whose recipe was dropped to break a cycle.
+     */
+    public boolean isExpandable(int id) {
+        return outputCounts[id] > 0 && !cycleCut[id];
+    }
+
+    public int outputCount(int id) {
+        return outputCounts[id];
+    }
+
+    public int ingredientStart(int id) {
+        return offsets[id];
+    }
+
+    public int ingredientEnd(int id) {
+        return offsets[id + 1];
+    }
+
+    public int ingredientId(int edge) {
+        return ingredientIds[edge];
+    }
+
+    public int ingredientCount(int edge) {
+        return counts[edge];
+    }
+
+    /**
+     * Returns the node at the given position of the topological order.
+     */
+    public int nodeAt(int rank) {
+        return order[rank];
+    }
+
+    /**
+     * Returns the position of a node in the topological order.
+     */
+    public int rankOf(int id) {
+        return rank[id];
+    }
+
+    /**
+     * Resolves recipe cycles and computes the topological order, in linear time.
+     * <p>
+     * Strongly connected components are found once with Tarjan's algorithm. Inside a cyclic component
+     * the acyclic direction is kept: a member whose recipe produces more items than it consumes from its
+     * own component (an uncrafting recipe like 1 iron block into 9 ingots) is treated as a base material.
+     * If a component is still cyclic after that, all of its members are treated as base materials.
+     * Tarjan emits components ingredients-first, so the reversed emission order of the final pass is a
+     * valid topological order.
+     */
+    private void computeOrder() {
+        int size = size();
+        int[] component = new int[size];
+        int[] emitted = new int[size];
+
+        int componentCount = findComponents(component, emitted);
+        int[] componentSizes = new int[componentCount];
+        for (int node = 0; node < size; node++) {
+            componentSizes[component[node]]++;
+        }
+        for (int node = 0; node < size; node++) {
+            if (!isExpandable(node)) continue;
+            int inside = 0;
+            boolean selfLoop = false;
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                if (component[ingredientIds[edge]] == component[node]) {
+                    inside += counts[edge];
+                    selfLoop |= ingredientIds[edge] == node;
+                }
+            }
+            boolean cyclic = componentSizes[component[node]] > 1 || selfLoop;
+            if (cyclic && inside < outputCounts[node]) {
+                cycleCut[node] = true;
+            }
+        }
+
+        componentCount = findComponents(component, emitted);
+        componentSizes = new int[componentCount];
+        boolean[] cyclic = new boolean[componentCount];
+        for (int node = 0; node < size; node++) {
+            componentSizes[component[node]]++;
+            if (!isExpandable(node)) continue;
+            for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                if (ingredientIds[edge] == node) cyclic[component[node]] = true;
+            }
+        }
+        for (int node = 0; node < size; node++) {
+            if (componentSizes[component[node]] > 1 || cyclic[component[node]]) {
+                cycleCut[node] = true;
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            order[i] = emitted[size - 1 - i];
+            rank[order[i]] = i;
+        }
+    }
+
+    /**
+     * Iterative Tarjan over the edges of expandable nodes.
+     *
+     * @param component receives the component index of every node
+     * @param emitted   receives all nodes, in the order their components were completed
+     * @return the number of components
+     */
+    private int findComponents(int[] component, int[] emitted) {
+        int size = size();
+        int[] index = new int[size];
+        int[] low = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] componentStack = new int[size];
+        int[] callStack = new int[size];
+        int[] cursor = new int[size];
+        Arrays.fill(index, -1);
+
+        int counter = 0;
+        int stackSize = 0;
+        int emitCount = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (index[root] != -1) continue;
+            int depth = 0;
+            callStack[0] = root;
+            cursor[0] = offsets[root];
+            index[root] = low[root] = counter++;
+            componentStack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int node = callStack[depth];
+                int end = isExpandable(node) ? offsets[node + 1] : offsets[node];
+                if (cursor[depth] < end) {
+                    int child = ingredientIds[cursor[depth]++];
+                    if (index[child] == -1) {
+                        index[child] = low[child] = counter++;
+                        componentStack[stackSize++] = child;
+                        onStack[child] = true;
+                        depth++;
+                        callStack[depth] = child;
+                        cursor[depth] = offsets[child];
+                    } else if (onStack[child]) {
+                        low[node] = Math.min(low[node], index[child]);
+                    }
+                    continue;
+                }
+
+                if (low[node] == index[node]) {
+                    int member;
+                    do {
+                        member = componentStack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = componentCount;
+                        emitted[emitCount++] = member;
+                    } while (member != node);
+                    componentCount++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callStack[depth];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+            }
+        }
+        return componentCount;
+    }
+
+    /**
+     * Collects one recipe per result node and packs them into a {@link RecipeGraph}.
+     */
+    public static final class Builder {
+
+        private int[] outputCounts = new int[64];
+        private int[][] ingredientIds = new int[64][];
+        private int[][] counts = new int[64][];
+        private int edgeCount;
+
+        public Builder recipe(int result, int outputCount, int[] ingredients, int[] ingredientCounts) {
+            if (ingredients.length != ingredientCounts.length) {
+                throw new IllegalArgumentException("Ingredient ids and counts differ in length");
+            }
+            ensureCapacity(result + 1);
+            if (this.ingredientIds[result] != null) {
+                edgeCount -= this.ingredientIds[result].length;
+            }
+            this.outputCounts[result] = Math.max(1, outputCount);
+            this.ingredientIds[result] = ingredients;
+            this.counts[result] = ingredientCounts;
+            edgeCount += ingredients.length;
+            return this;
+        }
+
+        public RecipeGraph build(int size) {
+            int[] offsets = new int[size + 1];
+            int[] ids = new int[edgeCount];
+            int[] edgeCounts = new int[edgeCount];
+            int[] outputs = new int[size];
+            int edge = 0;
+
+            for (int node = 0; node < size; node++) {
+                offsets[node] = edge;
+                if (node >= outputCounts.length || ingredientIds[node] == null) continue;
+                outputs[node] = outputCounts[node];
+                int[] nodeIngredients = ingredientIds[node];
+                for (int i = 0; i < nodeIngredients.length; i++) {
+                    if (nodeIngredients[i] >= size) {
+                        throw new IllegalArgumentException("Ingredient id " + nodeIngredients[i] + " is outside the graph");
+                    }
+                    ids[edge] = nodeIngredients[i];
+                    edgeCounts[edge] = counts[node][i];
+                    edge++;
+                }
+            }
+            offsets[size] = edge;
+            if (edge != edgeCount) {
+                throw new IllegalArgumentException("Recipe results exceed graph size " + size);
+            }
+
+            return new RecipeGraph(offsets, ids, edgeCounts, outputs);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= outputCounts.length) return;
+            int newCapacity = Math.max(capacity, outputCounts.length * 2);
+            outputCounts = Arrays.copyOf(outputCounts, newCapacity);
+            ingredientIds = Arrays.copyOf(ingredientIds, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+        }
+    }
+}
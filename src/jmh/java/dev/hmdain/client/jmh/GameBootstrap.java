@@ -0,0 +1,19 @@
+package dev.hmdain.client.jmh;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+
+/**
+ * Boots the vanilla registries so benchmarks can use items outside a running game.
+ * Data-driven content such as tags is not loaded, so tag materials have no members here.
+ */
+public final class GameBootstrap {
+
+    private GameBootstrap() {
+    }
+
+    public static void init() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+    }
+}
@@ -0,0 +1,42 @@
+package dev.hmdain.client.logic;
+
+import dev.hmdain.client.jmh.GameBootstrap;
+import net.minecraft.world.item.Item;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of the item browser's search index over the vanilla registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemSearchBenchmark {
+
+    @Param({"s", "stone", "oak planks", "@minecraft", "@minecraft iron", "minecraft:oak_", "zzzz"})
+    public String query;
+
+    private ItemSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GameBootstrap.init();
+        index = ItemSearchIndex.build();
+    }
+
+    @Benchmark
+    public List<Item> search() {
+        return index.search(query, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ItemSearchIndex build() {
+        return ItemSearchIndex.build();
+    }
+}
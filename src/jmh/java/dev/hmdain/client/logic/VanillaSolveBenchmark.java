@@ -0,0 +1,73 @@
+package dev.hmdain.client.logic;
+
+import dev.hmdain.client.jmh.GameBootstrap;
+import net.minecraft.world.item.Item;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solve latency and recipe lookups on the hardcoded vanilla table, through the same
+ * {@link RecipeResolver} and {@link CostCalculator} the client uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VanillaSolveBenchmark {
+
+    private RecipeResolver resolver;
+    private CostCalculator calculator;
+    private Map<Item, Long> targets;
+    private Material[] materials;
+    private Item deltaItem;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GameBootstrap.init();
+        resolver = new RecipeResolver();
+        calculator = new CostCalculator(resolver);
+
+        // Every craftable item of the table at once, a worst case for a single plan
+        targets = new LinkedHashMap<>();
+        for (Material material : resolver.getFallbackRecipes().keySet()) {
+            if (!material.isTag()) {
+                targets.put(material.item(), 1L);
+            }
+        }
+        deltaItem = targets.keySet().iterator().next();
+        materials = resolver.getIndex().materials().toArray(new Material[0]);
+        calculator.calculate(targets, () -> false);
+    }
+
+    @Benchmark
+    public Map<Material, Long> fullSolve() {
+        calculator.calculate(targets, () -> false);
+        return calculator.getResults();
+    }
+
+    @Benchmark
+    public boolean deltaSolve() {
+        return calculator.applyDelta(deltaItem, 1) & calculator.applyDelta(deltaItem, -1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object recipeLookup() {
+        Material material = materials[next++ % materials.length];
+        return resolver.findRecipe(material).orElse(null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int idLookup() {
+        return resolver.getId(materials[next++ % materials.length]);
+    }
+}
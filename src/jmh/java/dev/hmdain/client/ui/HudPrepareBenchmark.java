@@ -0,0 +1,53 @@
+package dev.hmdain.client.ui;
+
+import dev.hmdain.client.jmh.GameBootstrap;
+import dev.hmdain.client.logic.Material;
+import dev.hmdain.client.logic.ResultSnapshot;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of preparing the HUD lines for a new result snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HudPrepareBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int results;
+
+    @Param({"10"})
+    public int maxLines;
+
+    private HudOverlay overlay;
+    private ResultSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GameBootstrap.init();
+        overlay = new HudOverlay();
+
+        SplittableRandom random = new SplittableRandom(42);
+        Map<Material, Long> counts = new HashMap<>();
+        for (Item item : BuiltInRegistries.ITEM) {
+            if (counts.size() == results) break;
+            counts.put(Material.of(item), 1L + random.nextInt(10_000));
+        }
+        snapshot = new ResultSnapshot(1, Map.copyOf(counts));
+    }
+
+    @Benchmark
+    public int prepare() {
+        return overlay.prepare(snapshot, maxLines);
+    }
+}
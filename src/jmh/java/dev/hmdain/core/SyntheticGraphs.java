@@ -0,0 +1,61 @@
+package dev.hmdain.core;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates reproducible recipe graphs of arbitrary size for the solver benchmarks.
+ */
+final class SyntheticGraphs {
+
+    private SyntheticGraphs() {
+    }
+
+    /**
+     * Builds a graph with {@code size} nodes. The first fifth are base materials; every other node has
+     * a recipe over lower ids, so the graph is acyclic unless {@code cycles} adds back edges.
+     *
+     * @param shape  {@code layered}: 1-4 ingredients picked from the 64 previous nodes, like modded trees;
+     *               {@code chain}: every node needs the previous one, for a depth of {@code size}
+     * @param cycles whether about 1% of the recipes also consume a higher node, which the graph has to cut
+     */
+    static RecipeGraph generate(int size, String shape, boolean cycles, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int baseCount = Math.max(1, size / 5);
+        RecipeGraph.Builder builder = new RecipeGraph.Builder();
+
+        for (int node = baseCount; node < size; node++) {
+            int[] ingredients;
+            if (shape.equals("chain")) {
+                ingredients = new int[] {node - 1, random.nextInt(baseCount)};
+            } else {
+                ingredients = new int[1 + random.nextInt(4)];
+                for (int i = 0; i < ingredients.length; i++) {
+                    ingredients[i] = node - 1 - random.nextInt(Math.min(node, 64));
+                }
+            }
+            if (cycles && random.nextInt(100) == 0 && node + 1 < size) {
+                ingredients = Arrays.copyOf(ingredients, ingredients.length + 1);
+                ingredients[ingredients.length - 1] = node + 1 + random.nextInt(Math.min(size - node - 1, 16));
+            }
+
+            int[] counts = new int[ingredients.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = 1 + random.nextInt(8);
+            }
+            builder.recipe(node, 1 + random.nextInt(4), ingredients, counts);
+        }
+        return builder.build(size);
+    }
+
+    /**
+     * Returns the {@code count} highest ids, the nodes furthest from the base materials.
+     */
+    static int[] topNodes(RecipeGraph graph, int count) {
+        int[] targets = new int[Math.min(count, graph.size())];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = graph.size() - 1 - i;
+        }
+        return targets;
+    }
+}
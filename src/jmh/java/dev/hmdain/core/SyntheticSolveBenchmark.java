@@ -0,0 +1,113 @@
+package dev.hmdain.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solver latency on generated graphs, independent of the game's registries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyntheticSolveBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int nodes;
+
+    @Param({"layered", "chain"})
+    public String shape;
+
+    @Param({"false", "true"})
+    public boolean cycles;
+
+    private RecipeGraph graph;
+    private int[] offsets;
+    private int[] ingredientIds;
+    private int[] counts;
+    private int[] outputCounts;
+    private DemandSolver solver;
+    private int[] targets;
+    private int[] manyTargets;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        graph = SyntheticGraphs.generate(nodes, shape, cycles, 42);
+        targets = SyntheticGraphs.topNodes(graph, 16);
+        manyTargets = SyntheticGraphs.topNodes(graph, 256);
+
+        offsets = new int[graph.size() + 1];
+        outputCounts = new int[graph.size()];
+        ingredientIds = new int[graph.edgeCount()];
+        counts = new int[graph.edgeCount()];
+        for (int node = 0; node < graph.size(); node++) {
+            offsets[node] = graph.ingredientStart(node);
+            outputCounts[node] = graph.outputCount(node);
+        }
+        offsets[graph.size()] = graph.edgeCount();
+        for (int edge = 0; edge < graph.edgeCount(); edge++) {
+            ingredientIds[edge] = graph.ingredientId(edge);
+            counts[edge] = graph.ingredientCount(edge);
+        }
+
+        solver = new DemandSolver(graph, new ClosureCache(1024));
+        fullSolve();
+    }
+
+    /**
+     * All targets from scratch, as after a recipe reload.
+     */
+    @Benchmark
+    public int fullSolve() {
+        solver.reset();
+        for (int target : targets) {
+            solver.addDemand(target, 64);
+        }
+        return solver.sweep();
+    }
+
+    /**
+     * Like {@link #fullSolve()} with 256 targets, sequential and on the common pool.
+     */
+    @Benchmark
+    public int fullSolveManyTargets() {
+        solver.reset();
+        for (int target : manyTargets) {
+            solver.addDemand(target, 64);
+        }
+        return solver.sweep();
+    }
+
+    @Benchmark
+    public int fullSolveManyTargetsParallel() {
+        solver.reset();
+        for (int target : manyTargets) {
+            solver.addDemand(target, 64);
+        }
+        return solver.sweep(() -> false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * One +1 and one -1 click on a target, each applied as a delta sweep.
+     */
+    @Benchmark
+    public int deltaSolve() {
+        solver.addDemand(targets[0], 1);
+        int changed = solver.sweep();
+        solver.addDemand(targets[0], -1);
+        return changed + solver.sweep();
+    }
+
+    /**
+     * Cycle resolution and topological ordering, as done when an index is loaded from disk.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public RecipeGraph compileGraph() {
+        return RecipeGraph.fromArrays(offsets, ingredientIds, counts, outputCounts);
+    }
+}